@@ -0,0 +1,92 @@
+package com.fam.vest.config;
+
+import com.fam.vest.ticker.KiteTickDecoder;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Builds kite binary frames with realistic prices and quantities for the benchmarks.
+ */
+public final class KiteFrames {
+
+    public enum Shape {
+        LTP, QUOTE, FULL, INDEX
+    }
+
+    // NSE equity instrument tokens carry segment 1 in the low byte, indices carry segment 9
+    private static final int EQUITY_SEGMENT = 1;
+    private static final int INDEX_SEGMENT = 9;
+
+    private KiteFrames() {
+    }
+
+    public static long[] tokens(Shape shape, int count) {
+        long[] tokens = new long[count];
+        int segment = shape == Shape.INDEX ? INDEX_SEGMENT : EQUITY_SEGMENT;
+        for (int i = 0; i < count; i++) {
+            tokens[i] = ((long) (1000 + i) << 8) | segment;
+        }
+        return tokens;
+    }
+
+    public static byte[] frame(Shape shape, long[] tokens, long seed) {
+        Random random = new Random(seed);
+        int packetLength = packetLength(shape);
+        ByteBuffer buffer = ByteBuffer.allocate(2 + tokens.length * (2 + packetLength));
+        buffer.putShort((short) tokens.length);
+        int now = (int) (System.currentTimeMillis() / 1000L);
+        for (long token : tokens) {
+            buffer.putShort((short) packetLength);
+            int price = 10000 + random.nextInt(500000);
+            buffer.putInt((int) token);
+            buffer.putInt(price);
+            switch (shape) {
+                case LTP -> {
+                }
+                case INDEX -> {
+                    buffer.putInt(price + random.nextInt(1000));
+                    buffer.putInt(price - random.nextInt(1000));
+                    buffer.putInt(price + random.nextInt(500) - 250);
+                    buffer.putInt(price + random.nextInt(500) - 250);
+                    buffer.putInt(random.nextInt(1000) - 500);
+                    buffer.putInt(now);
+                }
+                case QUOTE, FULL -> {
+                    buffer.putInt(1 + random.nextInt(500));
+                    buffer.putInt(price + random.nextInt(200) - 100);
+                    buffer.putInt(random.nextInt(10000000));
+                    buffer.putInt(random.nextInt(500000));
+                    buffer.putInt(random.nextInt(500000));
+                    buffer.putInt(price + random.nextInt(500) - 250);
+                    buffer.putInt(price + random.nextInt(1000));
+                    buffer.putInt(price - random.nextInt(1000));
+                    buffer.putInt(price + random.nextInt(500) - 250);
+                    if (shape == Shape.FULL) {
+                        buffer.putInt(now);
+                        buffer.putInt(random.nextInt(1000000));
+                        buffer.putInt(random.nextInt(1000000));
+                        buffer.putInt(random.nextInt(1000000));
+                        buffer.putInt(now);
+                        for (int level = 0; level < 10; level++) {
+                            buffer.putInt(1 + random.nextInt(5000));
+                            buffer.putInt(level < 5 ? price - level * 5 : price + (level - 4) * 5);
+                            buffer.putShort((short) (1 + random.nextInt(50)));
+                            buffer.putShort((short) 0);
+                        }
+                    }
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    private static int packetLength(Shape shape) {
+        return switch (shape) {
+            case LTP -> KiteTickDecoder.LTP_PACKET_LENGTH;
+            case QUOTE -> KiteTickDecoder.QUOTE_PACKET_LENGTH;
+            case FULL -> KiteTickDecoder.FULL_PACKET_LENGTH;
+            case INDEX -> KiteTickDecoder.INDEX_FULL_PACKET_LENGTH;
+        };
+    }
+}
@@ -0,0 +1,100 @@
+package com.fam.vest.config;
+
+import com.fam.vest.service.implementation.IInternalTickFeedService;
+import com.fam.vest.ticker.KiteTickDecoder;
+import com.fam.vest.ticker.PrimitiveTick;
+import com.fam.vest.ticker.TickConsumer;
+import com.fam.vest.ticker.TickListener;
+import com.zerodhatech.models.Tick;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch of a full-mode frame by the tick bus to the front end consumer, interested in every
+ * streamed instrument, and to the internal consumer, interested in a fraction of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KiteTickBusDispatchBenchmark {
+
+    @Param({"50", "500"})
+    private int packets;
+
+    @Param({"10"})
+    private int internalPercent;
+
+    private KiteTickBus kiteTickBus;
+    private KiteTickDecoder decoder;
+    private TickListener listener;
+    private byte[] frame;
+    private ArrayList<Tick> ticks;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.kiteTickBus = new KiteTickBus(null, null, null, 250L, 60L, false);
+        TickConsumer frontEnd = new TickConsumer() {
+            @Override
+            public String consumerName() {
+                return "frontend";
+            }
+
+            @Override
+            public void onTick(PrimitiveTick tick) {
+                blackhole.consume(tick.getLastTradedPrice());
+            }
+        };
+        InternalKiteWebSocketConnector internal = new InternalKiteWebSocketConnector(this.kiteTickBus, new IInternalTickFeedService());
+        this.kiteTickBus.register(frontEnd);
+        internal.init();
+
+        long[] tokens = KiteFrames.tokens(KiteFrames.Shape.FULL, this.packets);
+        Set<Long> allTokens = new HashSet<>();
+        Set<Long> internalTokens = new HashSet<>();
+        for (int i = 0; i < tokens.length; i++) {
+            allTokens.add(tokens[i]);
+            if (i * 100 < this.internalPercent * tokens.length) {
+                internalTokens.add(tokens[i]);
+            }
+        }
+        // no upstream is connected, so this only registers the interests
+        this.kiteTickBus.subscribe(frontEnd, allTokens, PrimitiveTick.MODE_FULL);
+        internal.subscribeWebsocketForInternalInstruments(internalTokens);
+
+        this.frame = KiteFrames.frame(KiteFrames.Shape.FULL, tokens, 7L);
+        this.decoder = new KiteTickDecoder();
+        this.decoder.setMarketDepthRequired(this.kiteTickBus.needsMarketDepth());
+        this.listener = new TickListener() {
+            @Override
+            public void onTick(PrimitiveTick tick) {
+                kiteTickBus.handleTick(tick);
+            }
+
+            @Override
+            public void onTickBatchEnd() {
+                kiteTickBus.handleTickBatchEnd();
+            }
+        };
+        this.ticks = new KiteTickDecoder().decode(this.frame);
+    }
+
+    @Benchmark
+    public int customTickerFrame() {
+        int delivered = this.decoder.decode(this.frame, this.listener);
+        this.listener.onTickBatchEnd();
+        return delivered;
+    }
+
+    @Benchmark
+    public void zerodhaTickerTicks() {
+        this.kiteTickBus.handleTicks(this.ticks);
+    }
+}
@@ -0,0 +1,54 @@
+package com.fam.vest.config;
+
+import com.fam.vest.ticker.KiteTickDecoder;
+import com.fam.vest.ticker.PrimitiveTick;
+import com.fam.vest.ticker.TickListener;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding cost of one kite frame, through the legacy {@code parseBinary} path that builds kite
+ * ticks and through the flyweight listener path used by the custom connectors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KiteTickerParseBenchmark {
+
+    @Param({"LTP", "QUOTE", "FULL", "INDEX"})
+    private KiteFrames.Shape shape;
+
+    @Param({"1", "50", "500"})
+    private int packets;
+
+    private KiteTicker kiteTicker;
+    private KiteTickDecoder decoder;
+    private byte[] frame;
+
+    @Setup
+    public void setUp() {
+        this.kiteTicker = new KiteTicker("benchmark", "benchmark");
+        this.decoder = new KiteTickDecoder();
+        this.frame = KiteFrames.frame(this.shape, KiteFrames.tokens(this.shape, this.packets), 42L);
+    }
+
+    @Benchmark
+    public Object parseBinary() {
+        return this.kiteTicker.parseBinary(this.frame);
+    }
+
+    @Benchmark
+    public int decodeToListener(Blackhole blackhole) {
+        return this.decoder.decode(this.frame, new TickListener() {
+            @Override
+            public void onTick(PrimitiveTick tick) {
+                blackhole.consume(tick.getLastTradedPrice());
+            }
+        });
+    }
+}
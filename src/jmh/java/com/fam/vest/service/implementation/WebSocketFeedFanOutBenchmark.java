@@ -0,0 +1,75 @@
+package com.fam.vest.service.implementation;
+
+import com.fam.vest.config.ClientSessionRegistry;
+import com.fam.vest.config.KiteFrames;
+import com.fam.vest.ticker.KiteTickDecoder;
+import com.fam.vest.ticker.PrimitiveTick;
+import com.zerodhatech.models.Tick;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out of one decoded frame to N STOMP sessions, each watching a random slice of the
+ * streamed instruments. Messages are serialized as in production and then discarded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebSocketFeedFanOutBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int sessions;
+
+    @Param({"500"})
+    private int packets;
+
+    @Param({"50"})
+    private int tokensPerSession;
+
+    private IWebSocketFeedService webSocketFeedService;
+    private List<Tick> ticks;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        MessageChannel channel = new MessageChannel() {
+            @Override
+            public boolean send(Message<?> message, long timeout) {
+                blackhole.consume(message);
+                return true;
+            }
+        };
+        SimpMessagingTemplate template = new SimpMessagingTemplate(channel);
+        template.setMessageConverter(new MappingJackson2MessageConverter());
+
+        long[] tokens = KiteFrames.tokens(KiteFrames.Shape.FULL, this.packets);
+        ClientSessionRegistry registry = new ClientSessionRegistry();
+        Random random = new Random(11L);
+        for (int session = 0; session < this.sessions; session++) {
+            Set<Long> sessionTokens = new HashSet<>();
+            while (sessionTokens.size() < Math.min(this.tokensPerSession, tokens.length)) {
+                sessionTokens.add(tokens[random.nextInt(tokens.length)]);
+            }
+            registry.addTokens("user-" + (session % 10), "session-" + session, sessionTokens, PrimitiveTick.MODE_FULL);
+        }
+        this.webSocketFeedService = new IWebSocketFeedService(registry, template, null, null);
+        this.ticks = new KiteTickDecoder().decode(KiteFrames.frame(KiteFrames.Shape.FULL, tokens, 3L));
+    }
+
+    @Benchmark
+    public void feedTicks() {
+        this.webSocketFeedService.feedTicks(this.ticks);
+    }
+}
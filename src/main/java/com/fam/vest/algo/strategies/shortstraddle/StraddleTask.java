@@ -4,6 +4,7 @@ import com.fam.vest.entity.Instrument;
 import com.fam.vest.entity.StraddleStrategy;
 import com.fam.vest.entity.StraddleStrategyExecution;
 import com.fam.vest.exception.ResourceNotFoundException;
+import com.fam.vest.pojo.StaleQuote;
 import com.fam.vest.pojo.email.ResendEmailPayload;
 import com.fam.vest.repository.InstrumentRepository;
 import com.fam.vest.repository.StraddleStrategyExecutionRepository;
@@ -83,7 +84,7 @@ public class StraddleTask implements Runnable {
 
     private record StraddleQuotes(Quote call, Quote put) {
         public boolean isValid() {
-            return call != null && put != null;
+            return call != null && put != null && !(call instanceof StaleQuote) && !(put instanceof StaleQuote);
         }
     }
 
@@ -304,8 +305,8 @@ public class StraddleTask implements Runnable {
                 straddleLogger.info("[{}] [{}] Using index for underlying: {}", strategy.getUserId(), strategy.getInstrument(), strategy.getIndex());
             }
             quote = this.getLatestQuote(exchange + ":" + instrument);
-            if (quote == null) {
-                throw new StraddleExecutionException("Unable to fetch quote for: " + instrument);
+            if (quote == null || quote instanceof StaleQuote) {
+                throw new StraddleExecutionException("Unable to fetch a current quote for: " + instrument);
             }
             straddleLogger.info("[{}] [{}] Fetched quote for {} with price: {}", strategy.getUserId(), strategy.getInstrument(), instrument, quote.lastPrice);
         } catch (Exception e) {
@@ -319,13 +320,14 @@ public class StraddleTask implements Runnable {
         return positionsMap.get("net");
     }
 
+    // pnl decisions never run on stale quotes, stale instruments come back missing
     private Quote getLatestQuote(String instrument) {
-        Map<String, Quote> quote = quoteService.getQuote(instrument);
+        Map<String, Quote> quote = quoteService.getQuotes(new String[]{instrument}, false);
         return quote.get(instrument);
     }
 
     private Map<String, Quote> getLatestQuotes(String[] instruments) {
-        return quoteService.getQuotes(instruments);
+        return quoteService.getQuotes(instruments, false);
     }
 
     private Instrument getInstrumentByStrike(StraddleStrategy straddleStrategy, int strike, String optionType) {
@@ -4,6 +4,14 @@ import com.neovisionaries.ws.client.WebSocketException;
 import com.fam.vest.entity.TradingAccount;
 import com.fam.vest.repository.TradingAccountRepository;
 import com.fam.vest.service.TokenService;
+import com.fam.vest.ticker.FrameListener;
+import com.fam.vest.ticker.KiteTickDecoder;
+import com.fam.vest.ticker.PrimitiveTick;
+import com.fam.vest.ticker.TickHistoryRecorder;
+import com.fam.vest.ticker.TickJournal;
+import com.fam.vest.ticker.TickJournalReplayer;
+import com.fam.vest.ticker.TickListener;
+import com.fam.vest.ticker.TickRingBuffer;
 import com.zerodhatech.kiteconnect.KiteConnect;
 import com.zerodhatech.kiteconnect.kitehttp.exceptions.KiteException;
 import com.zerodhatech.models.Order;
@@ -11,16 +19,25 @@ import com.zerodhatech.models.Quote;
 import com.zerodhatech.models.Tick;
 import com.zerodhatech.ticker.*;
 import io.micrometer.common.util.StringUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 public abstract class BaseKiteWebSocketConnector {
@@ -28,8 +45,29 @@ public abstract class BaseKiteWebSocketConnector {
     private final KiteConnector kiteConnector;
     protected final TradingAccountRepository tradingAccountRepository;
     protected final TokenService tokenService;
-    protected KiteTicker customKiteTicker;
+    protected KiteTickerPool customKiteTicker;
     protected com.zerodhatech.ticker.KiteTicker zerodhaKiteTicker;
+    private final PrimitiveTick zerodhaTickScratch = new PrimitiveTick();
+    private final TickListener tickListener = new TickListener() {
+        @Override
+        public void onTick(PrimitiveTick tick) {
+            handleTick(tick);
+        }
+
+        @Override
+        public void onTickBatchEnd() {
+            handleTickBatchEnd();
+        }
+    };
+    private TickJournal tickJournal;
+    private TickRingBuffer tickRingBuffer;
+    private final AtomicBoolean replaying = new AtomicBoolean();
+
+    @Autowired
+    protected TickHistoryRecorder tickHistoryRecorder;
+
+    @Autowired(required = false)
+    protected MeterRegistry meterRegistry;
 
     @Value("${fam.vest.app.kite.websocket.subscription.batch.size}")
     protected int websocketBatchSize;
@@ -40,6 +78,33 @@ public abstract class BaseKiteWebSocketConnector {
     @Value("${fam.vest.app.is.custom.data.streaming:true}")
     protected boolean isCustomDataStreaming;
 
+    @Value("${fam.vest.app.kite.websocket.pool.size:1}")
+    protected int kiteTickerPoolSize;
+
+    @Value("${fam.vest.app.kite.websocket.tokens.per.connection:3000}")
+    protected int tokensPerConnection;
+
+    @Value("${fam.vest.app.kite.websocket.resubscribe.batch.size:500}")
+    protected int kiteResubscribeBatchSize;
+
+    @Value("${fam.vest.app.kite.websocket.ring.size:1024}")
+    protected int tickRingSize;
+
+    @Value("${fam.vest.app.kite.websocket.ring.wait.strategy:sleeping}")
+    protected String tickRingWaitStrategy;
+
+    @Value("${fam.vest.app.kite.websocket.ring.overflow.policy:conflate}")
+    protected String tickRingOverflowPolicy;
+
+    @Value("${fam.vest.app.tick.journal.enabled:false}")
+    protected boolean tickJournalEnabled;
+
+    @Value("${fam.vest.app.tick.journal.directory:journal}")
+    protected String tickJournalDirectory;
+
+    @Value("${fam.vest.app.tick.journal.queue.capacity:65536}")
+    protected int tickJournalQueueCapacity;
+
     public BaseKiteWebSocketConnector(KiteConnector kiteConnector,
                                       TradingAccountRepository tradingAccountRepository,
                                       TokenService tokenService) {
@@ -63,6 +128,7 @@ public abstract class BaseKiteWebSocketConnector {
                 } else {
                     log.info("Custom data streaming is enabled, using custom kite ticker for user: {}", tradingAccount.getUserId());
                     this.customConnectWebsocket(tradingAccount);                    }
+                this.onWebsocketConnected();
             } else {
                 log.error("Trading account for {} does not exist", dataStreamingUser);
             }
@@ -148,8 +214,8 @@ public abstract class BaseKiteWebSocketConnector {
         if(StringUtils.isNotBlank(encToken)) {
             log.info("Enc token received for user: {}", tradingAccount.getUserId());
             encToken = URLEncoder.encode(encToken, "UTF-8");
-            log.info("Creating KiteTicker instance with enc token of user: {}", tradingAccount.getUserId());
-            customKiteTicker = new KiteTicker(encToken, "kitefront");
+            log.info("Creating KiteTicker pool of {} connections with enc token of user: {}", kiteTickerPoolSize, tradingAccount.getUserId());
+            customKiteTicker = new KiteTickerPool(encToken, "kitefront", kiteTickerPoolSize, tokensPerConnection);
 
             customKiteTicker.setOnConnectedListener(new OnConnect() {
                 @Override
@@ -164,6 +230,17 @@ public abstract class BaseKiteWebSocketConnector {
                     log.info("Kite web socket connection is disconnected");
                 }
             });
+            Timer recoveryTimer = null == meterRegistry ? null : Timer.builder("kite.websocket.recovery")
+                    .description("Time from detecting a lost kite web socket connection until it is subscribed again")
+                    .tag("connector", this.connectorName())
+                    .register(meterRegistry);
+            customKiteTicker.setOnRecoveredListener(recoveryMillis -> {
+                log.info("Kite web socket connection of {} connector recovered in {} ms", this.connectorName(), recoveryMillis);
+                if (null != recoveryTimer) {
+                    recoveryTimer.record(recoveryMillis, TimeUnit.MILLISECONDS);
+                }
+            });
+            customKiteTicker.setResubscribeBatchSize(kiteResubscribeBatchSize);
             customKiteTicker.setOnOrderUpdateListener(new OnOrderUpdate() {
                 @Override
                 public void onOrderUpdate(Order order) {
@@ -186,15 +263,32 @@ public abstract class BaseKiteWebSocketConnector {
                     log.error("Kite web socket error on listener", error);
                 }
             });
-            customKiteTicker.setOnTickerArrivalListener(new OnTicks() {
-                @Override
-                public void onTicks(ArrayList<Tick> ticks) {
-                    log.debug("Kite web socket on ticker arrival listener. Ticks size: {}", ticks.size());
-                    if(ticks.size() > 0) {
-                        handleTicks(ticks);
+            customKiteTicker.setMarketDepthRequired(this.needsMarketDepth());
+            if (tickRingSize > 0 && null == tickRingBuffer) {
+                tickRingBuffer = this.startTickRing();
+            }
+            if (null == tickRingBuffer) {
+                // without a ring the frames are decoded and dispatched on the socket reader thread
+                customKiteTicker.setOnTickListener(tickListener);
+            }
+            if (tickJournalEnabled && null == tickJournal) {
+                log.info("Recording kite web socket frames of {} connector to {}", this.connectorName(), tickJournalDirectory);
+                tickJournal = new TickJournal(Paths.get(tickJournalDirectory), this.connectorName(), tickJournalQueueCapacity);
+            }
+            boolean recordHistory = null != tickHistoryRecorder && tickHistoryRecorder.isEnabled();
+            if (null != tickJournal || recordHistory || null != tickRingBuffer) {
+                customKiteTicker.setOnFrameListener((frame, receivedAt) -> {
+                    if (null != tickJournal) {
+                        tickJournal.onFrame(frame, receivedAt);
                     }
-                }
-            });
+                    if (recordHistory) {
+                        tickHistoryRecorder.onFrame(frame, receivedAt);
+                    }
+                    if (null != tickRingBuffer) {
+                        tickRingBuffer.onFrame(frame, receivedAt);
+                    }
+                });
+            }
             customKiteTicker.setTryReconnection(true);
             customKiteTicker.setMaximumRetries(10);
             customKiteTicker.setMaximumRetryInterval(30);
@@ -209,37 +303,65 @@ public abstract class BaseKiteWebSocketConnector {
         }
     }
 
-    public void subscribeWebsocket(Set<Long> tokens) {
-        for (int index = 0; index < tokens.size(); index += websocketBatchSize) {
-            List<Long> tokenList = new ArrayList<>(tokens);
-            List<Long> batch = tokenList.subList(index, Math.min(index + websocketBatchSize, tokens.size()));
-            ArrayList<Long> batchTokens = new ArrayList<>(batch);
+    public void subscribeWebsocket(Collection<Long> tokens, String mode) {
+        List<Long> tokenList = new ArrayList<>(tokens);
+        for (int index = 0; index < tokenList.size(); index += websocketBatchSize) {
+            ArrayList<Long> batchTokens = new ArrayList<>(tokenList.subList(index, Math.min(index + websocketBatchSize, tokenList.size())));
             if(null != zerodhaKiteTicker) {
                 zerodhaKiteTicker.subscribe(batchTokens);
-                zerodhaKiteTicker.setMode(batchTokens, KiteTicker.modeFull);
+                zerodhaKiteTicker.setMode(batchTokens, mode);
             } else if(null != customKiteTicker) {
                 customKiteTicker.subscribe(batchTokens);
-                customKiteTicker.setMode(batchTokens, KiteTicker.modeFull);
+                customKiteTicker.setMode(batchTokens, mode);
             } else {
                 log.error("No KiteTicker instance available for subscribing to tokens: {}", batchTokens);
             }
         }
     }
 
-    public void unsubscribeWebsocket(Set<Long> tokens) {
-        if(!tokens.isEmpty()) {
+    public void setWebsocketMode(Collection<Long> tokens, String mode) {
+        List<Long> tokenList = new ArrayList<>(tokens);
+        for (int index = 0; index < tokenList.size(); index += websocketBatchSize) {
+            ArrayList<Long> batchTokens = new ArrayList<>(tokenList.subList(index, Math.min(index + websocketBatchSize, tokenList.size())));
             if(null != zerodhaKiteTicker) {
-                zerodhaKiteTicker.unsubscribe(new ArrayList<>(tokens));
+                zerodhaKiteTicker.setMode(batchTokens, mode);
             } else if(null != customKiteTicker) {
-                customKiteTicker.unsubscribe(new ArrayList<>(tokens));
+                customKiteTicker.setMode(batchTokens, mode);
             } else {
-                log.error("No KiteTicker instance available for unsubscribing to tokens: {}", tokens);
+                log.error("No KiteTicker instance available for changing mode of tokens: {}", batchTokens);
+            }
+        }
+    }
+
+    public void unsubscribeWebsocket(Collection<Long> tokens) {
+        if(!tokens.isEmpty()) {
+            List<Long> tokenList = new ArrayList<>(tokens);
+            for (int index = 0; index < tokenList.size(); index += websocketBatchSize) {
+                ArrayList<Long> batchTokens = new ArrayList<>(tokenList.subList(index, Math.min(index + websocketBatchSize, tokenList.size())));
+                if(null != zerodhaKiteTicker) {
+                    zerodhaKiteTicker.unsubscribe(batchTokens);
+                } else if(null != customKiteTicker) {
+                    customKiteTicker.unsubscribe(batchTokens);
+                } else {
+                    log.error("No KiteTicker instance available for unsubscribing to tokens: {}", batchTokens);
+                }
             }
         } else {
             log.warn("No tokens provided for unsubscription from kite web socket.");
         }
     }
 
+    public boolean isWebsocketAvailable() {
+        return null != zerodhaKiteTicker || null != customKiteTicker;
+    }
+
+    public boolean isWebsocketConnected() {
+        if (null != zerodhaKiteTicker) {
+            return zerodhaKiteTicker.isConnectionOpen();
+        }
+        return null != customKiteTicker && customKiteTicker.isConnectionOpen();
+    }
+
     @PreDestroy
     public void disconnectWebsocket() {
         log.info("Cleaning up resources and disconnecting WebSocket...");
@@ -250,7 +372,111 @@ public abstract class BaseKiteWebSocketConnector {
         } else {
             log.error("No KiteTicker instance available for disconnection.");
         }
+        if(null != tickJournal) {
+            tickJournal.close();
+        }
+        if(null != tickRingBuffer) {
+            tickRingBuffer.close();
+        }
+    }
+
+    private TickRingBuffer startTickRing() {
+        TickRingBuffer ring = new TickRingBuffer(this.connectorName(), tickRingSize,
+                TickRingBuffer.WaitStrategy.valueOf(tickRingWaitStrategy.toUpperCase(Locale.ROOT).replace('-', '_')),
+                TickRingBuffer.OverflowPolicy.valueOf(tickRingOverflowPolicy.toUpperCase(Locale.ROOT)));
+        this.tickRingHandlers().forEach(ring::addHandler);
+        ring.start();
+        if (null != meterRegistry) {
+            ring.bindTo(meterRegistry);
+        }
+        return ring;
+    }
+
+    /**
+     * Handlers that decode the frames of the tick ring, each on its own thread. By default one
+     * handler decodes every frame for {@link #handleTick(PrimitiveTick)}.
+     */
+    protected Map<String, TickRingBuffer.FrameHandler> tickRingHandlers() {
+        KiteTickDecoder decoder = new KiteTickDecoder();
+        decoder.setMarketDepthRequired(this.needsMarketDepth());
+        Map<String, TickRingBuffer.FrameHandler> handlers = new LinkedHashMap<>();
+        handlers.put("ticks", (frame, length, receivedAt) -> {
+            decoder.decode(frame, length, tickListener);
+            tickListener.onTickBatchEnd();
+        });
+        return handlers;
+    }
+
+    protected boolean isTickRingStarted() {
+        return null != tickRingBuffer;
+    }
+
+    /**
+     * Pushes the frames of a recorded journal through this connector as if they arrived on the socket.
+     * Replayed ticks reach every consumer of the connector, so a replay is refused while a kite
+     * connection is set up and stops as soon as one is, and only one replay runs at a time.
+     */
+    public long replayJournal(Path journalFile, double speed) throws IOException, InterruptedException {
+        if (this.isWebsocketAvailable()) {
+            throw new IllegalStateException("Tick journal replay refused, " + this.connectorName() + " connector has a live kite connection");
+        }
+        if (!this.replaying.compareAndSet(false, true)) {
+            throw new IllegalStateException("A tick journal replay is already running on " + this.connectorName() + " connector");
+        }
+        try {
+            log.info("Replaying tick journal {} through {} connector at speed {}", journalFile, this.connectorName(), speed);
+            FrameListener replayListener;
+            if (null != tickRingBuffer) {
+                replayListener = tickRingBuffer;
+            } else {
+                KiteTickDecoder replayDecoder = new KiteTickDecoder();
+                replayDecoder.setMarketDepthRequired(this.needsMarketDepth());
+                replayListener = (frame, receivedAt) -> {
+                    replayDecoder.decode(frame, tickListener);
+                    tickListener.onTickBatchEnd();
+                };
+            }
+            return new TickJournalReplayer().replay(journalFile, speed, (frame, receivedAt) -> {
+                if (this.isWebsocketAvailable()) {
+                    throw new IllegalStateException("Tick journal replay stopped, " + this.connectorName() + " connector connected to kite");
+                }
+                replayListener.onFrame(frame, receivedAt);
+            });
+        } finally {
+            this.replaying.set(false);
+        }
     }
 
-    protected abstract void handleTicks(ArrayList<Tick> ticks);
+    public boolean isReplaying() {
+        return this.replaying.get();
+    }
+
+    public Path getTickJournalDirectory() {
+        return Paths.get(tickJournalDirectory);
+    }
+
+    protected void handleTicks(ArrayList<Tick> ticks) {
+        // zerodha ticker hands over kite models, convert them into the scratch tick one by one
+        for (Tick tick : ticks) {
+            zerodhaTickScratch.copyFrom(tick, this.needsMarketDepth());
+            this.handleTick(zerodhaTickScratch);
+        }
+        this.handleTickBatchEnd();
+    }
+
+    protected abstract void handleTick(PrimitiveTick tick);
+
+    // tokens requested before the connection was up are subscribed here
+    protected void onWebsocketConnected() {
+    }
+
+    public abstract String connectorName();
+
+    // connectors that never read market depth skip retaining the depth block of full packets
+    protected boolean needsMarketDepth() {
+        return true;
+    }
+
+    protected void handleTickBatchEnd() {
+    }
 }
@@ -1,7 +1,11 @@
 package com.fam.vest.config;
 
+import com.fam.vest.ticker.PrimitiveTick;
+import com.fam.vest.util.ConcurrentLongObjectMap;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -10,41 +14,65 @@ import java.util.stream.Collectors;
 @Component
 public class ClientSessionRegistry {
 
-    private final Map<String, Set<Long>> sessions = new ConcurrentHashMap<>();
+    private static final String[] NO_SESSIONS = new String[0];
+
+    // tick mode every token is subscribed in, per session
+    private final Map<String, Map<Long, Byte>> sessions = new ConcurrentHashMap<>();
     private final Map<String, String> sessionMapping = new ConcurrentHashMap<>();
+    // inverted index of the sessions, copy-on-write arrays so that the tick fan-out reads without locking
+    private final ConcurrentLongObjectMap<String[]> tokenSessions = new ConcurrentLongObjectMap<>();
 
-    public void addTokens(String userName, String sessionId, Set<Long> instrumentTokens) {
-        sessions.computeIfAbsent(sessionId, k -> ConcurrentHashMap.newKeySet())
-                .addAll(instrumentTokens);
+    // returns the tokens whose mode changed for the session, mapped to their previous mode
+    public synchronized Map<Long, Byte> addTokens(String userName, String sessionId, Set<Long> instrumentTokens, byte mode) {
+        Map<Long, Byte> sessionTokens = sessions.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>());
         sessionMapping.put(sessionId, userName);
+        Map<Long, Byte> changedTokens = new HashMap<>();
+        for (Long instrumentToken : instrumentTokens) {
+            Byte previousMode = sessionTokens.put(instrumentToken, mode);
+            if (null == previousMode) {
+                indexSession(instrumentToken, sessionId);
+            }
+            if (null == previousMode || previousMode != mode) {
+                changedTokens.put(instrumentToken, null == previousMode ? PrimitiveTick.MODE_NONE : previousMode);
+            }
+        }
+        return changedTokens;
     }
 
-    public void removeTokens(String sessionId, Set<Long> instrumentTokens) {
+    // returns the tokens that were subscribed by the session, mapped to their mode
+    public synchronized Map<Long, Byte> removeTokens(String sessionId, Set<Long> instrumentTokens) {
+        Map<Long, Byte> removedTokens = new HashMap<>();
         if (sessions.containsKey(sessionId)) {
-            sessions.get(sessionId).removeAll(instrumentTokens);
-            if (sessions.get(sessionId).isEmpty()) {
+            Map<Long, Byte> sessionTokens = sessions.get(sessionId);
+            for (Long instrumentToken : instrumentTokens) {
+                Byte mode = sessionTokens.remove(instrumentToken);
+                if (null != mode) {
+                    removedTokens.put(instrumentToken, mode);
+                    unindexSession(instrumentToken, sessionId);
+                }
+            }
+            if (sessionTokens.isEmpty()) {
                 sessions.remove(sessionId);
                 if(sessionMapping.containsKey(sessionId)) {
                     sessionMapping.remove(sessionId);
                 }
             }
         }
+        return removedTokens;
     }
 
-    public Set<String> sessionsForToken(Long instrumentToken) {
-        return sessions.entrySet().stream()
-                .filter(e -> e.getValue().contains(instrumentToken))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toSet());
+    // the returned array is shared and must not be modified
+    public String[] sessionsForToken(long instrumentToken) {
+        String[] sessionIds = tokenSessions.get(instrumentToken);
+        return null == sessionIds ? NO_SESSIONS : sessionIds;
     }
 
-    public Set<Long> tokensExclusivelyForSession(String sessionId, Set<Long> instrumentTokens) {
-        return instrumentTokens.stream().filter(token ->
-                (this.sessionsForToken(token).size() == 1 && this.sessionsForToken(token).contains(sessionId))
-        ).collect(Collectors.toSet());
+    public Set<Long> tokensForSessionId(String sessionId) {
+        Map<Long, Byte> sessionTokens = sessions.get(sessionId);
+        return null == sessionTokens ? null : sessionTokens.keySet();
     }
 
-    public Set<Long> tokensForSessionId(String sessionId) {
+    public Map<Long, Byte> tokenModesForSessionId(String sessionId) {
         return sessions.get(sessionId);
     }
 
@@ -60,8 +88,31 @@ public class ClientSessionRegistry {
         return sessionMapping.get(sessionId);
     }
 
-    public void removeSession(String sessionId) {
-        sessions.remove(sessionId);
+    public synchronized void removeSession(String sessionId) {
+        Map<Long, Byte> sessionTokens = sessions.remove(sessionId);
+        if (null != sessionTokens) {
+            sessionTokens.keySet().forEach(instrumentToken -> unindexSession(instrumentToken, sessionId));
+        }
         sessionMapping.remove(sessionId);
     }
+
+    private void indexSession(long instrumentToken, String sessionId) {
+        String[] sessionIds = sessionsForToken(instrumentToken);
+        String[] indexed = Arrays.copyOf(sessionIds, sessionIds.length + 1);
+        indexed[sessionIds.length] = sessionId;
+        tokenSessions.put(instrumentToken, indexed);
+    }
+
+    private void unindexSession(long instrumentToken, String sessionId) {
+        String[] sessionIds = tokenSessions.get(instrumentToken);
+        if (null == sessionIds) {
+            return;
+        }
+        String[] remaining = Arrays.stream(sessionIds).filter(id -> !id.equals(sessionId)).toArray(String[]::new);
+        if (remaining.length == 0) {
+            tokenSessions.remove(instrumentToken);
+        } else {
+            tokenSessions.put(instrumentToken, remaining);
+        }
+    }
 }
@@ -1,50 +1,82 @@
 package com.fam.vest.config;
 
-import com.fam.vest.repository.TradingAccountRepository;
-import com.fam.vest.service.TokenService;
 import com.fam.vest.service.WebSocketFeedService;
+import com.fam.vest.ticker.LastValueTickCache;
+import com.fam.vest.ticker.PrimitiveTick;
+import com.fam.vest.ticker.TickConsumer;
 import com.zerodhatech.models.Tick;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
-public class FontEndKiteWebSocketConnector extends BaseKiteWebSocketConnector {
+public class FontEndKiteWebSocketConnector implements TickConsumer {
 
+    private final KiteTickBus kiteTickBus;
     private final WebSocketFeedService websocketFeedService;
+    private final LastValueTickCache lastValueTickCache;
+    private final ArrayList<Tick> pendingTicks = new ArrayList<>();
 
-    public FontEndKiteWebSocketConnector(KiteConnector kiteConnector,
-                                         TradingAccountRepository tradingAccountRepository,
-                                         TokenService tokenService,
-                                         WebSocketFeedService websocketFeedService) {
-        super(kiteConnector, tradingAccountRepository, tokenService);
+    public FontEndKiteWebSocketConnector(KiteTickBus kiteTickBus,
+                                         WebSocketFeedService websocketFeedService,
+                                         LastValueTickCache lastValueTickCache) {
+        this.kiteTickBus = kiteTickBus;
         this.websocketFeedService = websocketFeedService;
+        this.lastValueTickCache = lastValueTickCache;
     }
 
     @PostConstruct
     public void init() {
-        log.info("Initializing kite web socket connector for front end");
-        int delay = 40;
-        log.info("Scheduling kite web socket connector for front end {} seconds after startup", delay);
-        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-        scheduler.schedule(() -> {
-            try {
-                subscribeKiteWebsocket();
-            } catch (Exception e) {
-                log.error("Error while initializing kite web socket connector for front end: {}", e.getMessage(), e);
-            }
-        }, delay, TimeUnit.SECONDS);
+        log.info("Registering front end consumer on kite tick bus");
+        kiteTickBus.register(this);
     }
 
     @Override
-    protected void handleTicks(ArrayList<Tick> ticks) {
-        log.debug("Feeding {} tick for front end tick feed service", ticks.size());
-        websocketFeedService.feedTicks(ticks);
+    public String consumerName() {
+        return "frontend";
+    }
+
+    /**
+     * Holds the tokens in the given mode on the bus and releases the modes they were held in
+     * before, tokens new to the session come with {@link PrimitiveTick#MODE_NONE}.
+     */
+    public void subscribeWebsocket(Map<Long, Byte> previousModes, byte mode) {
+        if(!previousModes.isEmpty()) {
+            // acquire first so that a mode change never drops the token upstream in between
+            kiteTickBus.subscribe(this, previousModes.keySet(), mode);
+            previousModes.entrySet().stream()
+                    .filter(e -> e.getValue() != PrimitiveTick.MODE_NONE)
+                    .collect(Collectors.groupingBy(Map.Entry::getValue, Collectors.mapping(Map.Entry::getKey, Collectors.toSet())))
+                    .forEach((previousMode, tokens) -> kiteTickBus.unsubscribe(this, tokens, previousMode));
+        }
+    }
+
+    public void unsubscribeWebsocket(Map<Long, Byte> tokenModes) {
+        if(!tokenModes.isEmpty()) {
+            tokenModes.entrySet().stream()
+                    .collect(Collectors.groupingBy(Map.Entry::getValue, Collectors.mapping(Map.Entry::getKey, Collectors.toSet())))
+                    .forEach((mode, tokens) -> kiteTickBus.unsubscribe(this, tokens, mode));
+        }
+    }
+
+    @Override
+    public void onTick(PrimitiveTick tick) {
+        lastValueTickCache.put(tick);
+        // kite model is only built here, at the edge where the stomp feed serializes it
+        pendingTicks.add(tick.toTick());
+    }
+
+    @Override
+    public void onTickBatchEnd() {
+        if (!pendingTicks.isEmpty()) {
+            log.debug("Feeding {} tick for front end tick feed service", pendingTicks.size());
+            websocketFeedService.feedTicks(pendingTicks);
+            pendingTicks.clear();
+        }
     }
 }
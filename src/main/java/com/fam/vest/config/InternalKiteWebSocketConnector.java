@@ -1,16 +1,15 @@
 package com.fam.vest.config;
 
-import com.fam.vest.repository.TradingAccountRepository;
 import com.fam.vest.service.InternalTickFeedService;
-import com.fam.vest.service.TokenService;
-import com.zerodhatech.models.Tick;
+import com.fam.vest.ticker.PrimitiveTick;
+import com.fam.vest.ticker.TickConsumer;
+import com.fam.vest.util.ConcurrentLongObjectMap;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -19,48 +18,86 @@ import java.util.stream.Collectors;
 
 @Component
 @Slf4j
-public class InternalKiteWebSocketConnector extends BaseKiteWebSocketConnector {
+public class InternalKiteWebSocketConnector implements TickConsumer {
 
+    // quotes served from the internal feed carry OHLC, volume, OI and depth
+    private static final byte TICK_MODE = PrimitiveTick.MODE_FULL;
+
+    private final KiteTickBus kiteTickBus;
     private final InternalTickFeedService internalTickFeedService;
-    private final Set<Long> internalSubscribedInstrumentTokens = new HashSet<>();
+    // tokens held on the bus by this consumer with the time they were subscribed
+    private final ConcurrentLongObjectMap<Long> subscribedAt = new ConcurrentLongObjectMap<>();
+
+    @Value("${fam.vest.app.internal.tick.idle.release.minutes:30}")
+    private int idleReleaseMinutes;
 
-    public InternalKiteWebSocketConnector(KiteConnector kiteConnector,
-                                          TradingAccountRepository tradingAccountRepository,
-                                          TokenService tokenService,
+    public InternalKiteWebSocketConnector(KiteTickBus kiteTickBus,
                                           InternalTickFeedService internalTickFeedService) {
-        super(kiteConnector, tradingAccountRepository, tokenService);
+        this.kiteTickBus = kiteTickBus;
         this.internalTickFeedService = internalTickFeedService;
     }
 
     @PostConstruct
     public void init() {
-        log.info("Initializing kite web socket connector for internal");
-        int delay = 60;
-        log.info("Scheduling kite web socket connector for internal {} seconds after startup", delay);
-        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-        scheduler.schedule(() -> {
-            try {
-                subscribeKiteWebsocket();
-            } catch (Exception e) {
-                log.error("Error while initializing kite web socket connector for internal: {}", e.getMessage(), e);
-            }
-        }, delay, TimeUnit.SECONDS);
+        log.info("Registering internal consumer on kite tick bus");
+        kiteTickBus.register(this);
+        if (idleReleaseMinutes > 0) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    releaseIdleInstruments();
+                } catch (Exception e) {
+                    log.error("Error while releasing idle internal instruments: {}", e.getMessage(), e);
+                }
+            }, 1, 1, TimeUnit.MINUTES);
+        }
     }
 
     @Override
-    protected void handleTicks(ArrayList<Tick> ticks) {
-        log.debug("Feeding {} tick for internal tick feed service", ticks.size());
-        List<Tick> subscribedTicks = ticks.stream()
-                .filter(tick -> internalSubscribedInstrumentTokens.contains(tick.getInstrumentToken())).toList();
-        internalTickFeedService.feedTicks(subscribedTicks);
+    public String consumerName() {
+        return "internal";
     }
 
-    public void subscribeWebsocketForInternalInstruments(Set<Long> tokens) {
+    @Override
+    public void onTick(PrimitiveTick tick) {
+        // the bus only delivers tokens this consumer subscribed to
+        internalTickFeedService.feedTick(tick);
+    }
+
+    @Override
+    public boolean needsMarketDepth() {
+        return true;
+    }
+
+    public synchronized void subscribeWebsocketForInternalInstruments(Set<Long> tokens) {
         if(null != tokens && !tokens.isEmpty()) {
-            /*tokens = tokens.stream().filter(t -> !this.internalSubscribedInstrumentTokens.contains(t))
-                    .collect(Collectors.toSet());*/
-            this.internalSubscribedInstrumentTokens.addAll(tokens);
-            this.subscribeWebsocket(tokens);
+            Long now = System.currentTimeMillis();
+            Set<Long> newTokens = tokens.stream()
+                    .filter(token -> null == subscribedAt.get(token))
+                    .collect(Collectors.toSet());
+            newTokens.forEach(token -> subscribedAt.put(token, now));
+            if (!newTokens.isEmpty()) {
+                kiteTickBus.subscribe(this, newTokens, TICK_MODE);
+            }
+        }
+    }
+
+    // instruments nobody read for a while are released, the next read subscribes them again
+    private synchronized void releaseIdleInstruments() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleReleaseMinutes);
+        Set<Long> idleTokens = new HashSet<>();
+        subscribedAt.forEach((token, subscribedTime) -> {
+            if (Math.max(subscribedTime, internalTickFeedService.getLastReadAt(token)) < cutoff) {
+                idleTokens.add(token);
+            }
+        });
+        if (!idleTokens.isEmpty()) {
+            log.info("Releasing {} internal instruments idle for {} minutes", idleTokens.size(), idleReleaseMinutes);
+            kiteTickBus.unsubscribe(this, idleTokens, TICK_MODE);
+            idleTokens.forEach(token -> {
+                subscribedAt.remove(token);
+                internalTickFeedService.evictTick(token);
+            });
         }
     }
 }
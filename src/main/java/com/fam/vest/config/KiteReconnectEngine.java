@@ -0,0 +1,165 @@
+package com.fam.vest.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps one kite ticker connected, driven by a scheduler shared by all tickers. A connection
+ * counts as lost when its socket closes or no pong arrived within the pong deadline; reconnect
+ * attempts then follow an exponential backoff with full jitter, so the connections of a pool do
+ * not all hit kite at the same instant after a network blip.
+ * <p>
+ * The shared scheduler only keeps time. Opening a socket blocks for up to the connect timeout,
+ * so every attempt runs on an opener thread of its own and reports back to the engine; shards
+ * dropping together reconnect in parallel and no pong check waits behind a connect.
+ */
+@Slf4j
+class KiteReconnectEngine {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kite-reconnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ExecutorService OPENER = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "kite-reconnect-open");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final long BASE_BACKOFF_MILLIS = 500L;
+    private static final long PONG_CHECK_MILLIS = 1000L;
+    static final long PONG_DEADLINE_MILLIS = 5000L;
+
+    private final BooleanSupplier reopen;
+    private final LongSupplier lastPongAt;
+    private int maxRetries = 10;
+    private long maxBackoffMillis = 30000L;
+    private int attempts;
+    // when the current outage was detected, zero while connected
+    private long lostAt;
+    private boolean stopped;
+    // a socket is being opened, the watchdog must not start a second attempt meanwhile
+    private boolean opening;
+    private ScheduledFuture<?> pendingAttempt;
+    private ScheduledFuture<?> pongWatchdog;
+
+    /**
+     * @param reopen     opens a new socket and returns whether the connection was established
+     * @param lastPongAt time of the last pong of the current socket
+     */
+    KiteReconnectEngine(BooleanSupplier reopen, LongSupplier lastPongAt) {
+        this.reopen = reopen;
+        this.lastPongAt = lastPongAt;
+    }
+
+    synchronized void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    synchronized void setMaxBackoffMillis(long maxBackoffMillis) {
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    synchronized boolean isRecovering() {
+        return this.lostAt != 0L;
+    }
+
+    /**
+     * Called once a socket is connected, returns how long the outage lasted or zero when there
+     * was none.
+     */
+    synchronized long connected() {
+        this.stopped = false;
+        this.attempts = 0;
+        this.cancelPendingAttempt();
+        if (null == this.pongWatchdog) {
+            this.pongWatchdog = SCHEDULER.scheduleWithFixedDelay(this::checkPongDeadline, PONG_CHECK_MILLIS, PONG_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        long recoveryMillis = this.lostAt != 0L ? System.currentTimeMillis() - this.lostAt : 0L;
+        this.lostAt = 0L;
+        return recoveryMillis;
+    }
+
+    synchronized void connectionLost(String reason) {
+        if (this.stopped || this.opening || null != this.pendingAttempt) {
+            return;
+        }
+        if (this.lostAt == 0L) {
+            this.lostAt = System.currentTimeMillis();
+            log.warn("Kite web socket connection lost: {}", reason);
+        }
+        this.scheduleAttempt();
+    }
+
+    synchronized void stop() {
+        this.stopped = true;
+        this.cancelPendingAttempt();
+        if (null != this.pongWatchdog) {
+            this.pongWatchdog.cancel(false);
+            this.pongWatchdog = null;
+        }
+    }
+
+    private void scheduleAttempt() {
+        if (this.attempts >= this.maxRetries) {
+            log.error("Giving up reconnecting kite web socket after {} attempts", this.attempts);
+            // terminal until the ticker connects again, the pong watchdog must not restart the attempts
+            this.stop();
+            return;
+        }
+        long ceiling = Math.min(this.maxBackoffMillis, BASE_BACKOFF_MILLIS << Math.min(this.attempts, 20));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        this.pendingAttempt = SCHEDULER.schedule(this::attempt, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void attempt() {
+        int attempt;
+        synchronized (this) {
+            this.pendingAttempt = null;
+            if (this.stopped || this.lostAt == 0L) {
+                return;
+            }
+            attempt = ++this.attempts;
+            this.opening = true;
+        }
+        OPENER.execute(() -> this.open(attempt));
+    }
+
+    private void open(int attempt) {
+        log.info("Reconnecting kite web socket, attempt {}", attempt);
+        boolean reconnected = false;
+        try {
+            reconnected = this.reopen.getAsBoolean();
+        } catch (Exception e) {
+            log.error("Error while reconnecting kite web socket: {}", e.getMessage(), e);
+        }
+        synchronized (this) {
+            this.opening = false;
+            if (!reconnected && !this.stopped && this.lostAt != 0L && null == this.pendingAttempt) {
+                this.scheduleAttempt();
+            }
+        }
+    }
+
+    private void checkPongDeadline() {
+        long lastPong = this.lastPongAt.getAsLong();
+        if (lastPong > 0L && System.currentTimeMillis() - lastPong >= PONG_DEADLINE_MILLIS) {
+            this.connectionLost("no pong for " + (System.currentTimeMillis() - lastPong) + " ms");
+        }
+    }
+
+    private void cancelPendingAttempt() {
+        if (null != this.pendingAttempt) {
+            this.pendingAttempt.cancel(false);
+            this.pendingAttempt = null;
+        }
+    }
+}
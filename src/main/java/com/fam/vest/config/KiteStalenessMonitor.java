@@ -0,0 +1,210 @@
+package com.fam.vest.config;
+
+import com.fam.vest.util.ConcurrentLongObjectMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the last receive time of every token streamed upstream and flags tokens that stopped
+ * ticking while the socket is still up. Staleness only counts during market hours of a trading
+ * day while the upstream is connected, and never reaches back before the open or the last
+ * reconnect, so instruments that are quiet overnight, on holidays or during an outage are not
+ * flagged.
+ */
+@Slf4j
+class KiteStalenessMonitor {
+
+    private static final ZoneId MARKET_ZONE = ZoneId.of("Asia/Kolkata");
+    private static final LocalTime MARKET_OPEN = LocalTime.of(9, 15);
+    private static final LocalTime MARKET_CLOSE = LocalTime.of(15, 30);
+
+    private final KiteSubscriptionManager subscriptionManager;
+    private final long staleAfterMillis;
+    private final boolean resubscribeStale;
+    private final BooleanSupplier upstreamConnected;
+    private final Predicate<LocalDate> tradingDay;
+    private final ConcurrentLongObjectMap<AtomicLong> lastReceivedAt = new ConcurrentLongObjectMap<>();
+    private final ConcurrentLongObjectMap<Boolean> staleTokens = new ConcurrentLongObjectMap<>();
+    private Counter detectedCounter;
+    private Counter resubscribedCounter;
+    private ScheduledExecutorService sweepScheduler;
+    // the trading day calendar is only asked on the sweep thread, once per day
+    private volatile LocalDate tradingDayCheckedFor;
+    private volatile boolean tradingDayOpen;
+    // since when the upstream is connected, zero while it is down
+    private volatile long connectedSince;
+
+    /**
+     * @param upstreamConnected whether ticks can currently arrive from kite at all
+     * @param tradingDay        whether the exchanges trade on a weekday, may call out to a remote calendar
+     */
+    KiteStalenessMonitor(KiteSubscriptionManager subscriptionManager, long staleAfterMillis, boolean resubscribeStale,
+                         BooleanSupplier upstreamConnected, Predicate<LocalDate> tradingDay) {
+        this.subscriptionManager = subscriptionManager;
+        this.staleAfterMillis = staleAfterMillis;
+        this.resubscribeStale = resubscribeStale;
+        this.upstreamConnected = upstreamConnected;
+        this.tradingDay = tradingDay;
+    }
+
+    void onTick(long token, long receivedAt) {
+        AtomicLong lastReceived = this.lastReceivedAt.get(token);
+        if (null == lastReceived) {
+            lastReceived = this.lastReceivedAt.computeIfAbsent(token, key -> new AtomicLong());
+        }
+        lastReceived.lazySet(receivedAt);
+    }
+
+    /**
+     * Whether the token is of interest but has been silent for longer than the threshold, checked
+     * against the clock rather than the last sweep.
+     */
+    boolean isStale(long token) {
+        long now = System.currentTimeMillis();
+        long silentSince = this.silentSince(token, now);
+        return silentSince > 0L && now - silentSince > this.staleAfterMillis;
+    }
+
+    int staleTokenCount() {
+        return this.staleTokens.size();
+    }
+
+    synchronized void start(MeterRegistry meterRegistry, long sweepSeconds) {
+        if (null != this.sweepScheduler) {
+            return;
+        }
+        if (null != meterRegistry) {
+            Gauge.builder("kite.tick.stale.tokens", this, KiteStalenessMonitor::staleTokenCount)
+                    .description("Subscribed tokens silent for longer than the staleness threshold")
+                    .register(meterRegistry);
+            Gauge.builder("kite.tick.tracked.tokens", this.lastReceivedAt, ConcurrentLongObjectMap::size)
+                    .description("Tokens with a known last receive time")
+                    .register(meterRegistry);
+            this.detectedCounter = Counter.builder("kite.tick.stale.detected")
+                    .description("Tokens that went stale")
+                    .register(meterRegistry);
+            this.resubscribedCounter = Counter.builder("kite.tick.stale.resubscribed")
+                    .description("Stale tokens subscribed again on the kite web socket")
+                    .register(meterRegistry);
+        }
+        this.sweepScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kite-staleness-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sweepScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                this.sweep();
+            } catch (Exception e) {
+                log.error("Error while sweeping stale kite tokens: {}", e.getMessage(), e);
+            }
+        }, sweepSeconds, sweepSeconds, TimeUnit.SECONDS);
+    }
+
+    synchronized void shutdown() {
+        if (null != this.sweepScheduler) {
+            this.sweepScheduler.shutdown();
+        }
+    }
+
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        this.checkTradingDay(Instant.ofEpochMilli(now).atZone(MARKET_ZONE).toLocalDate());
+        if (!this.upstreamConnected.getAsBoolean()) {
+            this.connectedSince = 0L;
+        } else if (this.connectedSince == 0L) {
+            this.connectedSince = now;
+        }
+        Set<Long> interested = new HashSet<>();
+        List<Long> newlyStale = new ArrayList<>();
+        for (long token : this.subscriptionManager.interestedTokens()) {
+            interested.add(token);
+            if (null == this.lastReceivedAt.get(token)) {
+                // never ticked yet, the silence is measured from now on
+                this.lastReceivedAt.put(token, new AtomicLong(now));
+            }
+            long silentSince = this.silentSince(token, now);
+            if (silentSince > 0L && now - silentSince > this.staleAfterMillis) {
+                if (null == this.staleTokens.put(token, Boolean.TRUE)) {
+                    newlyStale.add(token);
+                }
+            } else {
+                this.staleTokens.remove(token);
+            }
+        }
+        for (long token : this.lastReceivedAt.keys()) {
+            if (!interested.contains(token)) {
+                this.lastReceivedAt.remove(token);
+                this.staleTokens.remove(token);
+            }
+        }
+        if (newlyStale.isEmpty()) {
+            return;
+        }
+        log.warn("{} kite tokens silent for more than {} seconds: {}", newlyStale.size(), TimeUnit.MILLISECONDS.toSeconds(this.staleAfterMillis), newlyStale);
+        if (null != this.detectedCounter) {
+            this.detectedCounter.increment(newlyStale.size());
+        }
+        if (this.resubscribeStale) {
+            this.subscriptionManager.resubscribe(newlyStale);
+            if (null != this.resubscribedCounter) {
+                this.resubscribedCounter.increment(newlyStale.size());
+            }
+        }
+    }
+
+    private void checkTradingDay(LocalDate date) {
+        if (date.equals(this.tradingDayCheckedFor)) {
+            return;
+        }
+        boolean open = false;
+        if (date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY) {
+            try {
+                open = this.tradingDay.test(date);
+            } catch (Exception e) {
+                // asked again on the next sweep, until then no token counts as stale
+                log.warn("Could not check whether {} is a trading day: {}", date, e.getMessage());
+                return;
+            }
+        }
+        this.tradingDayOpen = open;
+        this.tradingDayCheckedFor = date;
+        log.info("{} is {} trading day, kite tick staleness is {}", date, open ? "a" : "not a", open ? "tracked" : "not tracked");
+    }
+
+    // start of the current silence of the token, zero outside a trading session or for unknown tokens
+    private long silentSince(long token, long now) {
+        AtomicLong lastReceived = this.lastReceivedAt.get(token);
+        long connectedAt = this.connectedSince;
+        if (null == lastReceived || connectedAt == 0L || this.subscriptionManager.interestMask(token) == 0L) {
+            return 0L;
+        }
+        ZonedDateTime marketNow = Instant.ofEpochMilli(now).atZone(MARKET_ZONE);
+        LocalTime time = marketNow.toLocalTime();
+        if (!this.tradingDayOpen || !marketNow.toLocalDate().equals(this.tradingDayCheckedFor)
+                || time.isBefore(MARKET_OPEN) || !time.isBefore(MARKET_CLOSE) || !this.upstreamConnected.getAsBoolean()) {
+            return 0L;
+        }
+        long marketOpenedAt = marketNow.with(MARKET_OPEN).toInstant().toEpochMilli();
+        return Math.max(lastReceived.get(), Math.max(marketOpenedAt, connectedAt));
+    }
+}
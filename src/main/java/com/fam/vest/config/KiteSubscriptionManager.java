@@ -0,0 +1,229 @@
+package com.fam.vest.config;
+
+import com.fam.vest.ticker.PrimitiveTick;
+import com.fam.vest.util.ConcurrentLongObjectMap;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reference counts token subscriptions per consumer of the tick bus and keeps the upstream
+ * subscription in line with them. Interest changes take effect for tick delivery immediately,
+ * while upstream changes are collected for a short window and then sent as the net difference
+ * between what is wanted and what is already live, so a burst of re-subscriptions of live tokens
+ * causes no upstream traffic at all. Every reference also carries the tick mode the consumer
+ * needs; a token is streamed in the highest mode still referenced and is downgraded when the
+ * richer references go away.
+ */
+@Slf4j
+class KiteSubscriptionManager {
+
+    private static final int MODES = PrimitiveTick.MODE_FULL + 1;
+
+    private final BaseKiteWebSocketConnector upstream;
+    private final long coalesceMillis;
+    private final ScheduledExecutorService flushScheduler;
+    // references of a token per consumer and tick mode, indexed by consumer * MODES + mode
+    private final ConcurrentLongObjectMap<int[]> referenceCounts = new ConcurrentLongObjectMap<>();
+    // references of a token per tick mode, indexed by the primitive tick mode
+    private final ConcurrentLongObjectMap<int[]> modeCounts = new ConcurrentLongObjectMap<>();
+    // bit i of a token's mask is set while consumer i holds at least one reference to the token
+    private final ConcurrentLongObjectMap<Long> interestMasks = new ConcurrentLongObjectMap<>();
+    // mode each token is currently streamed in upstream
+    private final ConcurrentLongObjectMap<Byte> upstreamModes = new ConcurrentLongObjectMap<>();
+    private final ConcurrentLongObjectMap<Boolean> changedTokens = new ConcurrentLongObjectMap<>();
+    private boolean flushScheduled;
+
+    KiteSubscriptionManager(BaseKiteWebSocketConnector upstream, long coalesceMillis) {
+        this.upstream = upstream;
+        this.coalesceMillis = coalesceMillis;
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kite-subscription-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    long interestMask(long token) {
+        Long mask = this.interestMasks.get(token);
+        return null == mask ? 0L : mask;
+    }
+
+    long[] interestedTokens() {
+        return this.interestMasks.keys();
+    }
+
+    int upstreamTokenCount() {
+        return this.upstreamModes.size();
+    }
+
+    byte upstreamMode(long token) {
+        Byte mode = this.upstreamModes.get(token);
+        return null == mode ? PrimitiveTick.MODE_NONE : mode;
+    }
+
+    synchronized void acquire(int consumer, Iterable<Long> tokens, byte mode) {
+        for (Long token : tokens) {
+            int[] modes = this.modeCounts.get(token);
+            if (null == modes) {
+                modes = new int[MODES];
+                this.modeCounts.put(token, modes);
+            }
+            if (modes[mode]++ == 0) {
+                this.changedTokens.put(token, Boolean.TRUE);
+            }
+            int[] counts = this.referenceCounts.get(token);
+            if (null == counts) {
+                counts = new int[(consumer + 1) * MODES];
+                this.referenceCounts.put(token, counts);
+            } else if (counts.length <= consumer * MODES) {
+                counts = Arrays.copyOf(counts, (consumer + 1) * MODES);
+                this.referenceCounts.put(token, counts);
+            }
+            boolean firstReference = consumerReferences(counts, consumer) == 0;
+            counts[consumer * MODES + mode]++;
+            if (firstReference) {
+                this.interestMasks.put(token, this.interestMask(token) | (1L << consumer));
+                this.changedTokens.put(token, Boolean.TRUE);
+            }
+        }
+        this.scheduleFlush();
+    }
+
+    // a release is only honoured against the consumer's own references in that mode
+    synchronized void release(int consumer, Iterable<Long> tokens, byte mode) {
+        for (Long token : tokens) {
+            int[] counts = this.referenceCounts.get(token);
+            if (null == counts || counts.length <= consumer * MODES || counts[consumer * MODES + mode] == 0) {
+                continue;
+            }
+            counts[consumer * MODES + mode]--;
+            int[] modes = this.modeCounts.get(token);
+            if (--modes[mode] == 0) {
+                this.changedTokens.put(token, Boolean.TRUE);
+            }
+            if (consumerReferences(counts, consumer) == 0) {
+                long mask = this.interestMask(token) & ~(1L << consumer);
+                if (mask == 0L) {
+                    this.interestMasks.remove(token);
+                    this.referenceCounts.remove(token);
+                    this.modeCounts.remove(token);
+                } else {
+                    this.interestMasks.put(token, mask);
+                }
+                this.changedTokens.put(token, Boolean.TRUE);
+            }
+        }
+        this.scheduleFlush();
+    }
+
+    /**
+     * Forgets what is live upstream and subscribes every token of interest again, used when a
+     * connection has just been established.
+     */
+    synchronized void resubscribeAll() {
+        this.upstreamModes.clear();
+        for (long token : this.interestMasks.keys()) {
+            this.changedTokens.put(token, Boolean.TRUE);
+        }
+        this.flush();
+    }
+
+    /**
+     * Subscribes the tokens again in their live mode, to revive tokens that stopped ticking.
+     */
+    synchronized void resubscribe(List<Long> tokens) {
+        if (!this.upstream.isWebsocketAvailable()) {
+            return;
+        }
+        Map<Byte, List<Long>> liveTokens = new TreeMap<>();
+        for (Long token : tokens) {
+            byte mode = this.upstreamMode(token);
+            if (mode != PrimitiveTick.MODE_NONE) {
+                liveTokens.computeIfAbsent(mode, k -> new ArrayList<>()).add(token);
+            }
+        }
+        liveTokens.forEach((mode, modeTokens) -> {
+            log.info("Resubscribing {} silent tokens in {} mode on kite web socket", modeTokens.size(), PrimitiveTick.modeName(mode));
+            this.upstream.unsubscribeWebsocket(modeTokens);
+            this.upstream.subscribeWebsocket(modeTokens, PrimitiveTick.modeName(mode));
+        });
+    }
+
+    void shutdown() {
+        this.flushScheduler.shutdown();
+    }
+
+    private void scheduleFlush() {
+        if (!this.flushScheduled && !this.changedTokens.isEmpty()) {
+            this.flushScheduled = true;
+            this.flushScheduler.schedule(this::flush, this.coalesceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void flush() {
+        this.flushScheduled = false;
+        if (this.changedTokens.isEmpty() || !this.upstream.isWebsocketAvailable()) {
+            // without a connection the changes stay pending until resubscribeAll
+            return;
+        }
+        Map<Byte, List<Long>> subscriptions = new TreeMap<>();
+        Map<Byte, List<Long>> modeChanges = new TreeMap<>();
+        List<Long> unsubscriptions = new ArrayList<>();
+        for (long token : this.changedTokens.keys()) {
+            byte wanted = this.wantedMode(token);
+            byte live = this.upstreamMode(token);
+            if (wanted == live) {
+                continue;
+            }
+            if (wanted == PrimitiveTick.MODE_NONE) {
+                unsubscriptions.add(token);
+                this.upstreamModes.remove(token);
+            } else {
+                (live == PrimitiveTick.MODE_NONE ? subscriptions : modeChanges).computeIfAbsent(wanted, k -> new ArrayList<>()).add(token);
+                this.upstreamModes.put(token, wanted);
+            }
+        }
+        this.changedTokens.clear();
+        subscriptions.forEach((mode, tokens) -> {
+            log.info("Subscribing {} tokens in {} mode on kite web socket", tokens.size(), PrimitiveTick.modeName(mode));
+            this.upstream.subscribeWebsocket(tokens, PrimitiveTick.modeName(mode));
+        });
+        modeChanges.forEach((mode, tokens) -> {
+            log.info("Switching {} tokens to {} mode on kite web socket", tokens.size(), PrimitiveTick.modeName(mode));
+            this.upstream.setWebsocketMode(tokens, PrimitiveTick.modeName(mode));
+        });
+        if (!unsubscriptions.isEmpty()) {
+            log.info("Unsubscribing {} tokens from kite web socket", unsubscriptions.size());
+            this.upstream.unsubscribeWebsocket(unsubscriptions);
+        }
+    }
+
+    private static int consumerReferences(int[] counts, int consumer) {
+        int references = 0;
+        for (int mode = 0; mode < MODES; mode++) {
+            references += counts[consumer * MODES + mode];
+        }
+        return references;
+    }
+
+    // the highest mode any consumer still references the token in
+    private byte wantedMode(long token) {
+        int[] modes = this.modeCounts.get(token);
+        if (null != modes) {
+            for (byte mode = PrimitiveTick.MODE_FULL; mode > PrimitiveTick.MODE_NONE; mode--) {
+                if (modes[mode] > 0) {
+                    return mode;
+                }
+            }
+        }
+        return PrimitiveTick.MODE_NONE;
+    }
+}
@@ -0,0 +1,311 @@
+package com.fam.vest.config;
+
+import com.fam.vest.pojo.ExchangeTimingResponse;
+import com.fam.vest.repository.TradingAccountRepository;
+import com.fam.vest.service.MarketInformationService;
+import com.fam.vest.service.TokenService;
+import com.fam.vest.ticker.KiteTickDecoder;
+import com.fam.vest.ticker.PrimitiveTick;
+import com.fam.vest.ticker.TickConsumer;
+import com.fam.vest.ticker.TickListener;
+import com.fam.vest.ticker.TickRingBuffer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the one upstream kite connection of the data streaming user and multiplexes it to the
+ * registered consumers. Every consumer declares its own token interest through the
+ * {@link KiteSubscriptionManager}. With the tick ring enabled every consumer decodes the frames
+ * on its own thread, so a slow consumer never holds up the socket reader or the other consumers;
+ * ticks are only delivered to the consumers interested in their token.
+ * <p>
+ * A bus given a {@link RemoteUpstream} opens no kite connection of its own: the subscriptions of
+ * its consumers are forwarded to the node that holds the connection and the ticks relayed back
+ * are handed to the consumers through {@link #deliverRelayed(ByteBuffer)}.
+ */
+@Component
+@Slf4j
+public class KiteTickBus extends BaseKiteWebSocketConnector {
+
+    /**
+     * Upstream of a bus that leaves the kite connection to another node. It receives the same
+     * coalesced subscription changes the kite ticker would, a mode change is a subscribe in the
+     * new mode.
+     */
+    public interface RemoteUpstream {
+
+        void subscribe(Collection<Long> tokens, byte mode);
+
+        void unsubscribe(Collection<Long> tokens);
+    }
+
+    private static final int MAXIMUM_CONSUMERS = Long.SIZE;
+
+    private final KiteSubscriptionManager subscriptionManager;
+    private final KiteStalenessMonitor stalenessMonitor;
+    private volatile TickConsumer[] consumers = new TickConsumer[0];
+    private volatile RemoteUpstream remoteUpstream;
+    // relayed ticks are read into one flyweight, its monitor keeps the consumers single threaded
+    private final PrimitiveTick relayedTick = new PrimitiveTick();
+
+    @Autowired(required = false)
+    private MarketInformationService marketInformationService;
+
+    @Value("${fam.vest.app.kite.tick.stale.sweep.seconds:5}")
+    private long staleSweepSeconds;
+
+    public KiteTickBus(KiteConnector kiteConnector,
+                       TradingAccountRepository tradingAccountRepository,
+                       TokenService tokenService,
+                       @Value("${fam.vest.app.kite.websocket.subscription.coalesce.millis:250}") long subscriptionCoalesceMillis,
+                       @Value("${fam.vest.app.kite.tick.stale.after.seconds:60}") long staleAfterSeconds,
+                       @Value("${fam.vest.app.kite.tick.stale.resubscribe:false}") boolean resubscribeStale) {
+        super(kiteConnector, tradingAccountRepository, tokenService);
+        this.subscriptionManager = new KiteSubscriptionManager(this, subscriptionCoalesceMillis);
+        this.stalenessMonitor = new KiteStalenessMonitor(this.subscriptionManager, TimeUnit.SECONDS.toMillis(staleAfterSeconds), resubscribeStale,
+                this::isWebsocketConnected, this::isTradingDay);
+    }
+
+    @PostConstruct
+    public void init() {
+        log.info("Initializing kite tick bus");
+        int delay = 40;
+        log.info("Scheduling kite web socket connection of the tick bus {} seconds after startup", delay);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.schedule(() -> {
+            if (null != this.remoteUpstream) {
+                log.info("Kite tick bus is fed by a remote upstream, kite web socket connection skipped");
+                return;
+            }
+            try {
+                subscribeKiteWebsocket();
+            } catch (Exception e) {
+                log.error("Error while initializing kite web socket connection of the tick bus: {}", e.getMessage(), e);
+            }
+        }, delay, TimeUnit.SECONDS);
+        stalenessMonitor.start(meterRegistry, staleSweepSeconds);
+    }
+
+    public synchronized void register(TickConsumer consumer) {
+        if (this.isTickRingStarted()) {
+            throw new IllegalStateException("Consumer " + consumer.consumerName() + " must register before the kite tick bus connects");
+        }
+        if (this.consumers.length == MAXIMUM_CONSUMERS) {
+            throw new IllegalStateException("Kite tick bus supports at most " + MAXIMUM_CONSUMERS + " consumers");
+        }
+        TickConsumer[] registered = Arrays.copyOf(this.consumers, this.consumers.length + 1);
+        registered[registered.length - 1] = consumer;
+        this.consumers = registered;
+        log.info("Registered {} consumer on kite tick bus", consumer.consumerName());
+    }
+
+    public void setRemoteUpstream(RemoteUpstream remoteUpstream) {
+        this.remoteUpstream = remoteUpstream;
+        // the remote upstream is live right away, interest taken before it was set goes out now
+        this.onWebsocketConnected();
+    }
+
+    /**
+     * Hands a batch of ticks relayed from the node holding the kite connection, as written by
+     * {@link PrimitiveTick#writeTo(ByteBuffer)}, to the interested consumers.
+     */
+    public void deliverRelayed(ByteBuffer ticks) {
+        synchronized (this.relayedTick) {
+            while (ticks.hasRemaining()) {
+                this.relayedTick.readFrom(ticks);
+                this.handleTick(this.relayedTick);
+            }
+            this.handleTickBatchEnd();
+        }
+    }
+
+    /**
+     * Takes one reference per token for the consumer in the given tick mode, every call must be
+     * paired with an unsubscribe in the same mode. Tokens are streamed upstream in the highest
+     * mode referenced by any consumer, so a consumer may receive richer ticks than it asked for.
+     */
+    public void subscribe(TickConsumer consumer, Set<Long> tokens, byte mode) {
+        this.subscriptionManager.acquire(this.indexOf(consumer), tokens, checkedMode(mode));
+    }
+
+    public void unsubscribe(TickConsumer consumer, Set<Long> tokens, byte mode) {
+        this.subscriptionManager.release(this.indexOf(consumer), tokens, checkedMode(mode));
+    }
+
+    public boolean isSubscribed(TickConsumer consumer, long token) {
+        return (this.subscriptionManager.interestMask(token) & (1L << this.indexOf(consumer))) != 0;
+    }
+
+    /**
+     * Whether a subscribed token stopped ticking during market hours of a trading day, while the
+     * upstream is connected, for longer than the staleness threshold; its last tick must not be
+     * trusted as a current price.
+     */
+    public boolean isStale(long token) {
+        return this.stalenessMonitor.isStale(token);
+    }
+
+    @Override
+    public boolean isWebsocketAvailable() {
+        return null != this.remoteUpstream || super.isWebsocketAvailable();
+    }
+
+    // the node holding the kite connection is trusted to be connected
+    @Override
+    public boolean isWebsocketConnected() {
+        return null != this.remoteUpstream || super.isWebsocketConnected();
+    }
+
+    @Override
+    public void subscribeWebsocket(Collection<Long> tokens, String mode) {
+        RemoteUpstream upstream = this.remoteUpstream;
+        if (null != upstream) {
+            upstream.subscribe(tokens, PrimitiveTick.modeOf(mode));
+        } else {
+            super.subscribeWebsocket(tokens, mode);
+        }
+    }
+
+    @Override
+    public void setWebsocketMode(Collection<Long> tokens, String mode) {
+        RemoteUpstream upstream = this.remoteUpstream;
+        if (null != upstream) {
+            upstream.subscribe(tokens, PrimitiveTick.modeOf(mode));
+        } else {
+            super.setWebsocketMode(tokens, mode);
+        }
+    }
+
+    @Override
+    public void unsubscribeWebsocket(Collection<Long> tokens) {
+        RemoteUpstream upstream = this.remoteUpstream;
+        if (null != upstream) {
+            upstream.unsubscribe(tokens);
+        } else {
+            super.unsubscribeWebsocket(tokens);
+        }
+    }
+
+    // a date without exchange timings is a holiday, the same as for the straddle strategies
+    private boolean isTradingDay(LocalDate date) {
+        if (null == this.marketInformationService) {
+            return true;
+        }
+        ExchangeTimingResponse exchangeTimingResponse = this.marketInformationService.getExchangeTradingTime(date);
+        if (null == exchangeTimingResponse) {
+            throw new IllegalStateException("No exchange timings received for " + date);
+        }
+        return null != exchangeTimingResponse.getData() && !exchangeTimingResponse.getData().isEmpty();
+    }
+
+    @Override
+    public String connectorName() {
+        return "upstream";
+    }
+
+    @Override
+    protected boolean needsMarketDepth() {
+        for (TickConsumer consumer : this.consumers) {
+            if (consumer.needsMarketDepth()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected Map<String, TickRingBuffer.FrameHandler> tickRingHandlers() {
+        Map<String, TickRingBuffer.FrameHandler> handlers = new LinkedHashMap<>();
+        TickConsumer[] registered = this.consumers;
+        for (int i = 0; i < registered.length; i++) {
+            // every handler decodes all packets, the first one also keeps the receive times
+            handlers.put(registered[i].consumerName(), this.consumerFrameHandler(registered[i], 1L << i, i == 0));
+        }
+        return handlers;
+    }
+
+    private TickRingBuffer.FrameHandler consumerFrameHandler(TickConsumer consumer, long bit, boolean trackReceiveTimes) {
+        KiteTickDecoder decoder = new KiteTickDecoder();
+        decoder.setMarketDepthRequired(consumer.needsMarketDepth());
+        long[] frameReceivedAt = new long[1];
+        TickListener listener = tick -> {
+            if (trackReceiveTimes) {
+                this.stalenessMonitor.onTick(tick.getInstrumentToken(), frameReceivedAt[0]);
+            }
+            if ((this.subscriptionManager.interestMask(tick.getInstrumentToken()) & bit) != 0) {
+                consumer.onTick(tick);
+            }
+        };
+        return (frame, length, receivedAt) -> {
+            frameReceivedAt[0] = receivedAt;
+            decoder.decode(frame, length, listener);
+            consumer.onTickBatchEnd();
+        };
+    }
+
+    @Override
+    protected void onWebsocketConnected() {
+        log.info("Subscribing {} tokens of interest on the new kite web socket connection", this.subscriptionManager.interestedTokens().length);
+        this.subscriptionManager.resubscribeAll();
+    }
+
+    @Override
+    public void disconnectWebsocket() {
+        this.subscriptionManager.shutdown();
+        this.stalenessMonitor.shutdown();
+        super.disconnectWebsocket();
+    }
+
+    @Override
+    protected void handleTick(PrimitiveTick tick) {
+        this.stalenessMonitor.onTick(tick.getInstrumentToken(), System.currentTimeMillis());
+        long mask = this.subscriptionManager.interestMask(tick.getInstrumentToken());
+        if (mask == 0L) {
+            return;
+        }
+        TickConsumer[] registered = this.consumers;
+        for (int i = 0; i < registered.length; i++) {
+            if ((mask & (1L << i)) != 0) {
+                registered[i].onTick(tick);
+            }
+        }
+    }
+
+    @Override
+    protected void handleTickBatchEnd() {
+        for (TickConsumer consumer : this.consumers) {
+            consumer.onTickBatchEnd();
+        }
+    }
+
+    private static byte checkedMode(byte mode) {
+        if (mode < PrimitiveTick.MODE_LTP || mode > PrimitiveTick.MODE_FULL) {
+            throw new IllegalArgumentException("Unsupported tick mode " + mode);
+        }
+        return mode;
+    }
+
+    private int indexOf(TickConsumer consumer) {
+        TickConsumer[] registered = this.consumers;
+        for (int i = 0; i < registered.length; i++) {
+            if (registered[i] == consumer) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Consumer " + consumer.consumerName() + " is not registered on kite tick bus");
+    }
+}
@@ -0,0 +1,297 @@
+package com.fam.vest.config;
+
+import com.fam.vest.ticker.FrameListener;
+import com.fam.vest.ticker.PrimitiveTick;
+import com.fam.vest.ticker.TickListener;
+import com.fam.vest.util.ConcurrentLongObjectMap;
+import com.zerodhatech.kiteconnect.kitehttp.exceptions.KiteException;
+import com.zerodhatech.ticker.OnConnect;
+import com.zerodhatech.ticker.OnDisconnect;
+import com.zerodhatech.ticker.OnError;
+import com.zerodhatech.ticker.OnOrderUpdate;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Spreads subscriptions over several kite web socket connections. Tokens are placed on a shard
+ * with a consistent hash ring, so the placement of a token does not depend on subscription order
+ * and only tokens of a full shard spill to the next shard on the ring. Spilled tokens move back
+ * home once their shard has room again. Ticks of all shards are merged into one listener.
+ */
+@Slf4j
+public class KiteTickerPool {
+
+    private static final int VIRTUAL_NODES_PER_SHARD = 64;
+
+    private final List<KiteTicker> shards = new ArrayList<>();
+    private final int tokensPerShard;
+    private final long[] ringHashes;
+    private final int[] ringShards;
+    private final int[] shardTokenCounts;
+    private final ConcurrentLongObjectMap<Integer> tokenShards = new ConcurrentLongObjectMap<>();
+    private final ConcurrentLongObjectMap<String> tokenModes = new ConcurrentLongObjectMap<>();
+    private final Object mergeLock = new Object();
+    private int spilledTokens;
+
+    public KiteTickerPool(String accessToken, String apiKey, int poolSize, int tokensPerShard) {
+        int size = Math.max(1, poolSize);
+        for (int shard = 0; shard < size; shard++) {
+            this.shards.add(new KiteTicker(accessToken, apiKey));
+        }
+        this.tokensPerShard = tokensPerShard;
+        this.shardTokenCounts = new int[size];
+        long[][] ring = new long[size * VIRTUAL_NODES_PER_SHARD][];
+        for (int shard = 0; shard < size; shard++) {
+            for (int node = 0; node < VIRTUAL_NODES_PER_SHARD; node++) {
+                ring[shard * VIRTUAL_NODES_PER_SHARD + node] = new long[]{hash(((long) shard << 32) | node), shard};
+            }
+        }
+        Arrays.sort(ring, (left, right) -> Long.compare(left[0], right[0]));
+        this.ringHashes = new long[ring.length];
+        this.ringShards = new int[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            this.ringHashes[i] = ring[i][0];
+            this.ringShards[i] = (int) ring[i][1];
+        }
+    }
+
+    public int size() {
+        return this.shards.size();
+    }
+
+    public synchronized int[] getShardTokenCounts() {
+        return this.shardTokenCounts.clone();
+    }
+
+    public void connect() {
+        for (int shard = 0; shard < this.shards.size(); shard++) {
+            log.info("Connecting kite web socket shard {} of {}", shard + 1, this.shards.size());
+            this.shards.get(shard).connect();
+        }
+    }
+
+    public void disconnect() {
+        this.shards.forEach(KiteTicker::disconnect);
+    }
+
+    public boolean isConnectionOpen() {
+        return this.shards.stream().allMatch(KiteTicker::isConnectionOpen);
+    }
+
+    public synchronized void subscribe(ArrayList<Long> tokens) {
+        List<ArrayList<Long>> batches = this.newShardBatches();
+        for (Long token : tokens) {
+            if (null == this.tokenShards.get(token)) {
+                int shard = this.place(token);
+                this.assign(token, shard);
+                this.tokenModes.put(token, KiteTicker.modeQuote);
+                batches.get(shard).add(token);
+            }
+        }
+        this.forEachBatch(batches, KiteTicker::subscribe);
+        this.rebalance();
+    }
+
+    public synchronized void setMode(ArrayList<Long> tokens, String mode) {
+        List<ArrayList<Long>> batches = this.newShardBatches();
+        for (Long token : tokens) {
+            Integer shard = this.tokenShards.get(token);
+            if (null != shard) {
+                this.tokenModes.put(token, mode);
+                batches.get(shard).add(token);
+            }
+        }
+        this.forEachBatch(batches, (ticker, batch) -> ticker.setMode(batch, mode));
+    }
+
+    public synchronized void unsubscribe(ArrayList<Long> tokens) {
+        List<ArrayList<Long>> batches = this.newShardBatches();
+        for (Long token : tokens) {
+            Integer shard = this.tokenShards.remove(token);
+            if (null != shard) {
+                this.tokenModes.remove(token);
+                this.shardTokenCounts[shard]--;
+                if (shard != this.homeShard(token)) {
+                    this.spilledTokens--;
+                }
+                batches.get(shard).add(token);
+            }
+        }
+        this.forEachBatch(batches, KiteTicker::unsubscribe);
+        this.rebalance();
+    }
+
+    public void setOnTickListener(TickListener listener) {
+        if (this.shards.size() == 1) {
+            this.shards.get(0).setOnTickListener(listener);
+            return;
+        }
+        // every shard decodes on its own reader thread, delivery is serialized into one stream
+        TickListener merged = new TickListener() {
+            @Override
+            public void onTick(PrimitiveTick tick) {
+                synchronized (mergeLock) {
+                    listener.onTick(tick);
+                }
+            }
+
+            @Override
+            public void onTickBatchEnd() {
+                synchronized (mergeLock) {
+                    listener.onTickBatchEnd();
+                }
+            }
+        };
+        this.shards.forEach(ticker -> ticker.setOnTickListener(merged));
+    }
+
+    public void setOnFrameListener(FrameListener listener) {
+        this.shards.forEach(ticker -> ticker.setOnFrameListener(listener));
+    }
+
+    public void setMarketDepthRequired(boolean marketDepthRequired) {
+        this.shards.forEach(ticker -> ticker.setMarketDepthRequired(marketDepthRequired));
+    }
+
+    public void setOnConnectedListener(OnConnect listener) {
+        this.shards.forEach(ticker -> ticker.setOnConnectedListener(listener));
+    }
+
+    public void setOnDisconnectedListener(OnDisconnect listener) {
+        this.shards.forEach(ticker -> ticker.setOnDisconnectedListener(listener));
+    }
+
+    public void setOnOrderUpdateListener(OnOrderUpdate listener) {
+        this.shards.forEach(ticker -> ticker.setOnOrderUpdateListener(listener));
+    }
+
+    public void setOnErrorListener(OnError listener) {
+        this.shards.forEach(ticker -> ticker.setOnErrorListener(listener));
+    }
+
+    public void setOnRecoveredListener(LongConsumer listener) {
+        this.shards.forEach(ticker -> ticker.setOnRecoveredListener(listener));
+    }
+
+    public void setResubscribeBatchSize(int resubscribeBatchSize) {
+        this.shards.forEach(ticker -> ticker.setResubscribeBatchSize(resubscribeBatchSize));
+    }
+
+    public void setTryReconnection(boolean retry) {
+        this.shards.forEach(ticker -> ticker.setTryReconnection(retry));
+    }
+
+    public void setMaximumRetries(int maxRetries) throws KiteException {
+        for (KiteTicker ticker : this.shards) {
+            ticker.setMaximumRetries(maxRetries);
+        }
+    }
+
+    public void setMaximumRetryInterval(int interval) throws KiteException {
+        for (KiteTicker ticker : this.shards) {
+            ticker.setMaximumRetryInterval(interval);
+        }
+    }
+
+    int homeShard(long token) {
+        return this.ringShards[this.ringIndex(token)];
+    }
+
+    /**
+     * Home shard of the token, or the next shard on the ring with room when the home shard is full.
+     */
+    private int place(long token) {
+        int start = this.ringIndex(token);
+        for (int i = 0; i < this.ringShards.length; i++) {
+            int shard = this.ringShards[(start + i) % this.ringShards.length];
+            if (this.shardTokenCounts[shard] < this.tokensPerShard) {
+                return shard;
+            }
+        }
+        int home = this.ringShards[start];
+        log.error("All {} kite web socket shards are at {} tokens, token {} exceeds the cap on shard {}",
+                this.shards.size(), this.tokensPerShard, token, home);
+        return home;
+    }
+
+    private void assign(long token, int shard) {
+        this.tokenShards.put(token, shard);
+        this.shardTokenCounts[shard]++;
+        if (shard != this.homeShard(token)) {
+            this.spilledTokens++;
+        }
+    }
+
+    // spilled tokens go back to their home shard as soon as it has room
+    private void rebalance() {
+        if (this.spilledTokens == 0) {
+            return;
+        }
+        List<ArrayList<Long>> removals = this.newShardBatches();
+        List<ArrayList<Long>> additions = this.newShardBatches();
+        this.tokenShards.forEach((token, shard) -> {
+            int home = this.homeShard(token);
+            if (shard != home && this.shardTokenCounts[home] < this.tokensPerShard) {
+                this.tokenShards.put(token, home);
+                this.shardTokenCounts[shard]--;
+                this.shardTokenCounts[home]++;
+                this.spilledTokens--;
+                removals.get(shard).add(token);
+                additions.get(home).add(token);
+            }
+        });
+        // subscribe on the home shard first so a moving token never goes without ticks, for a
+        // moment it ticks on both shards which the last-value consumers absorb
+        this.forEachBatch(additions, KiteTicker::subscribe);
+        for (int shard = 0; shard < additions.size(); shard++) {
+            ArrayList<Long> moved = additions.get(shard);
+            if (!moved.isEmpty()) {
+                log.info("Moved {} tokens back to kite web socket shard {}", moved.size(), shard);
+                for (String mode : new String[]{KiteTicker.modeLTP, KiteTicker.modeQuote, KiteTicker.modeFull}) {
+                    ArrayList<Long> tokensOfMode = new ArrayList<>();
+                    moved.stream().filter(token -> mode.equals(this.tokenModes.get(token))).forEach(tokensOfMode::add);
+                    if (!tokensOfMode.isEmpty()) {
+                        this.shards.get(shard).setMode(tokensOfMode, mode);
+                    }
+                }
+            }
+        }
+        this.forEachBatch(removals, KiteTicker::unsubscribe);
+    }
+
+    private List<ArrayList<Long>> newShardBatches() {
+        List<ArrayList<Long>> batches = new ArrayList<>(this.shards.size());
+        for (int shard = 0; shard < this.shards.size(); shard++) {
+            batches.add(new ArrayList<>());
+        }
+        return batches;
+    }
+
+    private void forEachBatch(List<ArrayList<Long>> batches, BiConsumer<KiteTicker, ArrayList<Long>> action) {
+        for (int shard = 0; shard < batches.size(); shard++) {
+            if (!batches.get(shard).isEmpty()) {
+                action.accept(this.shards.get(shard), batches.get(shard));
+            }
+        }
+    }
+
+    private int ringIndex(long token) {
+        int index = Arrays.binarySearch(this.ringHashes, hash(token));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index == this.ringHashes.length ? 0 : index;
+    }
+
+    private static long hash(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        hash *= 0xC2B2AE3D27D4EB4FL;
+        return hash ^ (hash >>> 29);
+    }
+}
@@ -0,0 +1,344 @@
+package com.fam.vest.config;
+
+import com.fam.vest.ticker.PrimitiveTick;
+import com.fam.vest.ticker.TickConsumer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads the one kite connection over several nodes through Redis pub/sub, so any number of web
+ * nodes can serve browser sessions without opening kite connections of their own.
+ * <ul>
+ *     <li>{@code local}: no relaying, the node streams from kite for itself.</li>
+ *     <li>{@code ingest}: the node holds the kite connection. It takes references on its tick bus
+ *     for the interest every web node announces and publishes the ticks of those tokens on one
+ *     channel per token shard.</li>
+ *     <li>{@code web}: the tick bus of the node forwards its subscription changes to the ingest
+ *     node and only listens to the shards of the tokens its consumers hold.</li>
+ * </ul>
+ * Web nodes announce their whole interest every heartbeat as well, which lets a restarted ingest
+ * node catch up and lets it release the interest of web nodes that went away.
+ */
+@Slf4j
+@Component
+public class RedisTickRelay implements TickConsumer, KiteTickBus.RemoteUpstream {
+
+    private static final String CHANNEL_PREFIX = "fam-vest-ticks:";
+    private static final String INTEREST_CHANNEL = CHANNEL_PREFIX + "interest";
+    private static final byte SUBSCRIBE = 1;
+    private static final byte UNSUBSCRIBE = 2;
+    private static final byte SNAPSHOT = 3;
+    private static final int EXPIRY_HEARTBEATS = 3;
+
+    private final KiteTickBus kiteTickBus;
+    private final RedisConnectionFactory connectionFactory;
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName();
+
+    @Value("${fam.vest.app.tick.relay.mode:local}")
+    private String mode;
+
+    @Value("${fam.vest.app.tick.relay.shards:16}")
+    private int shards;
+
+    @Value("${fam.vest.app.tick.relay.heartbeat.seconds:10}")
+    private long heartbeatSeconds;
+
+    private RedisMessageListenerContainer listenerContainer;
+    private ScheduledExecutorService heartbeatScheduler;
+
+    // ingest side: interest of every web node and the shard frames of the current tick batch
+    private final Map<String, RemoteNode> remoteNodes = new HashMap<>();
+    private ByteBuffer[] shardFrames;
+
+    // web side: token modes held by this node and the number of its tokens per shard
+    private final Map<Long, Byte> localInterest = new ConcurrentHashMap<>();
+    private int[] shardReferences;
+    private final MessageListener shardListener = (message, pattern) -> this.onShardFrame(message);
+
+    public RedisTickRelay(KiteTickBus kiteTickBus,
+                          RedisConnectionFactory connectionFactory,
+                          RedisTemplate<String, byte[]> tickRelayRedisTemplate) {
+        this.kiteTickBus = kiteTickBus;
+        this.connectionFactory = connectionFactory;
+        this.redisTemplate = tickRelayRedisTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        if ("ingest".equalsIgnoreCase(this.mode)) {
+            log.info("Relaying kite ticks to web nodes on {} shards as ingest node {}", this.shards, this.nodeId);
+            this.shardFrames = new ByteBuffer[this.shards];
+            this.kiteTickBus.register(this);
+            this.startListener();
+            this.listenerContainer.addMessageListener((message, pattern) -> this.onInterest(message), new ChannelTopic(INTEREST_CHANNEL));
+            this.startHeartbeat(this::expireRemoteNodes);
+        } else if ("web".equalsIgnoreCase(this.mode)) {
+            log.info("Receiving kite ticks from the ingest node on {} shards as web node {}", this.shards, this.nodeId);
+            this.shardReferences = new int[this.shards];
+            this.startListener();
+            this.kiteTickBus.setRemoteUpstream(this);
+            this.startHeartbeat(this::publishSnapshot);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (null != this.heartbeatScheduler) {
+            this.heartbeatScheduler.shutdown();
+        }
+        if (null != this.shardReferences) {
+            // an empty snapshot lets the ingest node release this node right away
+            this.localInterest.clear();
+            this.publishSnapshot();
+        }
+        if (null != this.listenerContainer) {
+            this.listenerContainer.stop();
+        }
+    }
+
+    @Override
+    public String consumerName() {
+        return "relay";
+    }
+
+    @Override
+    public void onTick(PrimitiveTick tick) {
+        int shard = this.shardOf(tick.getInstrumentToken());
+        ByteBuffer frame = this.shardFrames[shard];
+        if (null == frame) {
+            frame = ByteBuffer.allocate(64 * PrimitiveTick.MAXIMUM_WIRE_LENGTH);
+            this.shardFrames[shard] = frame;
+        }
+        if (frame.remaining() < PrimitiveTick.MAXIMUM_WIRE_LENGTH) {
+            this.publishShard(shard, frame);
+        }
+        tick.writeTo(frame);
+    }
+
+    @Override
+    public void onTickBatchEnd() {
+        for (int shard = 0; shard < this.shardFrames.length; shard++) {
+            ByteBuffer frame = this.shardFrames[shard];
+            if (null != frame && frame.position() > 0) {
+                this.publishShard(shard, frame);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void subscribe(Collection<Long> tokens, byte mode) {
+        for (Long token : tokens) {
+            if (null == this.localInterest.put(token, mode) && this.shardReferences[this.shardOf(token)]++ == 0) {
+                // listen before announcing, the first ticks of the shard must not be missed
+                this.listenerContainer.addMessageListener(this.shardListener, new ChannelTopic(this.shardChannel(this.shardOf(token))));
+            }
+        }
+        this.publishInterest(SUBSCRIBE, mode, tokens);
+    }
+
+    @Override
+    public synchronized void unsubscribe(Collection<Long> tokens) {
+        for (Long token : tokens) {
+            if (null != this.localInterest.remove(token) && --this.shardReferences[this.shardOf(token)] == 0) {
+                this.listenerContainer.removeMessageListener(this.shardListener, new ChannelTopic(this.shardChannel(this.shardOf(token))));
+            }
+        }
+        this.publishInterest(UNSUBSCRIBE, PrimitiveTick.MODE_NONE, tokens);
+    }
+
+    private void onShardFrame(Message message) {
+        try {
+            this.kiteTickBus.deliverRelayed(ByteBuffer.wrap(message.getBody()));
+        } catch (Exception e) {
+            log.error("Error while delivering ticks relayed on {}: {}", new String(message.getChannel(), StandardCharsets.UTF_8), e.getMessage(), e);
+        }
+    }
+
+    private void onInterest(Message message) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(message.getBody());
+            byte type = buffer.get();
+            byte[] node = new byte[buffer.getShort()];
+            buffer.get(node);
+            String nodeId = new String(node, StandardCharsets.UTF_8);
+            byte mode = buffer.get();
+            int count = buffer.getInt();
+            Map<Long, Byte> tokenModes = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                long token = buffer.getLong();
+                tokenModes.put(token, type == SNAPSHOT ? buffer.get() : mode);
+            }
+            this.applyInterest(nodeId, type, tokenModes);
+        } catch (Exception e) {
+            log.error("Error while applying the tick interest of a web node: {}", e.getMessage(), e);
+        }
+    }
+
+    private synchronized void applyInterest(String nodeId, byte type, Map<Long, Byte> tokenModes) {
+        RemoteNode node = this.remoteNodes.get(nodeId);
+        if (null == node) {
+            if (type == UNSUBSCRIBE || tokenModes.isEmpty()) {
+                return;
+            }
+            log.info("Web node {} joined the tick relay", nodeId);
+            node = new RemoteNode();
+            this.remoteNodes.put(nodeId, node);
+        }
+        node.lastSeenAt = System.currentTimeMillis();
+        if (type == UNSUBSCRIBE) {
+            this.release(node, tokenModes.keySet());
+            return;
+        }
+        if (type == SNAPSHOT) {
+            Set<Long> gone = new HashSet<>(node.tokenModes.keySet());
+            gone.removeAll(tokenModes.keySet());
+            this.release(node, gone);
+            if (tokenModes.isEmpty()) {
+                this.remoteNodes.remove(nodeId);
+                log.info("Web node {} left the tick relay", nodeId);
+                return;
+            }
+        }
+        // acquire first so that a mode change never drops the token upstream in between
+        Map<Long, Byte> previousModes = new HashMap<>();
+        for (Map.Entry<Long, Byte> tokenMode : tokenModes.entrySet()) {
+            Byte previous = node.tokenModes.put(tokenMode.getKey(), tokenMode.getValue());
+            if (null == previous || !previous.equals(tokenMode.getValue())) {
+                previousModes.put(tokenMode.getKey(), null == previous ? PrimitiveTick.MODE_NONE : previous);
+            }
+        }
+        this.groupByMode(previousModes.keySet(), tokenModes).forEach((mode, tokens) -> this.kiteTickBus.subscribe(this, tokens, mode));
+        previousModes.values().removeIf(previous -> previous == PrimitiveTick.MODE_NONE);
+        this.groupByMode(previousModes.keySet(), previousModes).forEach((mode, tokens) -> this.kiteTickBus.unsubscribe(this, tokens, mode));
+    }
+
+    private void release(RemoteNode node, Collection<Long> tokens) {
+        Map<Long, Byte> released = new HashMap<>();
+        for (Long token : tokens) {
+            Byte previous = node.tokenModes.remove(token);
+            if (null != previous) {
+                released.put(token, previous);
+            }
+        }
+        this.groupByMode(released.keySet(), released).forEach((mode, releasedTokens) -> this.kiteTickBus.unsubscribe(this, releasedTokens, mode));
+    }
+
+    private synchronized void expireRemoteNodes() {
+        long expiredBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(this.heartbeatSeconds * EXPIRY_HEARTBEATS);
+        Iterator<Map.Entry<String, RemoteNode>> iterator = this.remoteNodes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, RemoteNode> entry = iterator.next();
+            if (entry.getValue().lastSeenAt < expiredBefore) {
+                log.warn("Web node {} missed {} heartbeats, releasing its {} tokens", entry.getKey(), EXPIRY_HEARTBEATS, entry.getValue().tokenModes.size());
+                this.release(entry.getValue(), new HashSet<>(entry.getValue().tokenModes.keySet()));
+                iterator.remove();
+            }
+        }
+    }
+
+    private Map<Byte, Set<Long>> groupByMode(Set<Long> tokens, Map<Long, Byte> modes) {
+        return tokens.stream().collect(Collectors.groupingBy(modes::get, Collectors.toSet()));
+    }
+
+    private void publishShard(int shard, ByteBuffer frame) {
+        byte[] body = new byte[frame.position()];
+        frame.flip();
+        frame.get(body);
+        frame.clear();
+        try {
+            this.redisTemplate.convertAndSend(this.shardChannel(shard), body);
+        } catch (Exception e) {
+            log.error("Error while relaying ticks on shard {}: {}", shard, e.getMessage());
+        }
+    }
+
+    private void publishInterest(byte type, byte mode, Collection<Long> tokens) {
+        byte[] node = this.nodeId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 2 + node.length + 1 + 4 + tokens.size() * 8);
+        buffer.put(type).putShort((short) node.length).put(node).put(mode).putInt(tokens.size());
+        tokens.forEach(buffer::putLong);
+        this.publish(buffer.array());
+    }
+
+    private synchronized void publishSnapshot() {
+        byte[] node = this.nodeId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 2 + node.length + 1 + 4 + this.localInterest.size() * 9);
+        buffer.put(SNAPSHOT).putShort((short) node.length).put(node).put(PrimitiveTick.MODE_NONE).putInt(this.localInterest.size());
+        this.localInterest.forEach((token, mode) -> buffer.putLong(token).put(mode));
+        this.publish(buffer.array());
+    }
+
+    private void publish(byte[] body) {
+        try {
+            this.redisTemplate.convertAndSend(INTEREST_CHANNEL, body);
+        } catch (Exception e) {
+            log.error("Error while announcing the tick interest of web node {}: {}", this.nodeId, e.getMessage());
+        }
+    }
+
+    private void startListener() {
+        this.listenerContainer = new RedisMessageListenerContainer();
+        this.listenerContainer.setConnectionFactory(this.connectionFactory);
+        // one dispatch thread keeps the ticks of a shard in publish order
+        this.listenerContainer.setTaskExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tick-relay-listener");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        this.listenerContainer.afterPropertiesSet();
+        this.listenerContainer.start();
+    }
+
+    private void startHeartbeat(Runnable heartbeat) {
+        this.heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tick-relay-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeatScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                heartbeat.run();
+            } catch (Exception e) {
+                log.error("Error in tick relay heartbeat: {}", e.getMessage(), e);
+            }
+        }, this.heartbeatSeconds, this.heartbeatSeconds, TimeUnit.SECONDS);
+    }
+
+    private int shardOf(long token) {
+        return (int) Math.floorMod(token, (long) this.shards);
+    }
+
+    private String shardChannel(int shard) {
+        return CHANNEL_PREFIX + "shard:" + shard;
+    }
+
+    private static final class RemoteNode {
+        private final Map<Long, Byte> tokenModes = new HashMap<>();
+        private long lastSeenAt;
+    }
+}
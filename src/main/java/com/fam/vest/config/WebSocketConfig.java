@@ -26,10 +26,12 @@ import java.security.Principal;
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final JwtUtil jwtUtil;
+    private final WebSocketOutboundMonitor webSocketOutboundMonitor;
 
     @Autowired
-    public WebSocketConfig(JwtUtil jwtUtil) {
+    public WebSocketConfig(JwtUtil jwtUtil, WebSocketOutboundMonitor webSocketOutboundMonitor) {
         this.jwtUtil = jwtUtil;
+        this.webSocketOutboundMonitor = webSocketOutboundMonitor;
     }
 
     @Override
@@ -73,4 +75,9 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
             }
         });
     }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(webSocketOutboundMonitor);
+    }
 }
@@ -0,0 +1,57 @@
+package com.fam.vest.config;
+
+import com.fam.vest.pojo.records.SessionFeedStatistics;
+import com.fam.vest.pojo.records.SessionOutboundStatistics;
+import com.fam.vest.service.WebSocketFeedService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Actuator view of the browser tick feed, {@code /actuator/websocketfeed}, with the tick buffer
+ * and outbound channel statistics of every STOMP session.
+ */
+@Component
+@Endpoint(id = "websocketfeed")
+public class WebSocketFeedEndpoint {
+
+    private final WebSocketFeedService webSocketFeedService;
+    private final WebSocketOutboundMonitor webSocketOutboundMonitor;
+
+    @Autowired
+    public WebSocketFeedEndpoint(WebSocketFeedService webSocketFeedService, WebSocketOutboundMonitor webSocketOutboundMonitor) {
+        this.webSocketFeedService = webSocketFeedService;
+        this.webSocketOutboundMonitor = webSocketOutboundMonitor;
+    }
+
+    @ReadOperation
+    public Map<String, Object> feed() {
+        Map<String, SessionOutboundStatistics> outbound = new HashMap<>();
+        webSocketOutboundMonitor.getSessionOutboundStatistics().forEach(statistics -> outbound.put(statistics.sessionId(), statistics));
+        List<Map<String, Object>> sessions = new ArrayList<>();
+        for (SessionFeedStatistics feed : webSocketFeedService.getSessionFeedStatistics()) {
+            Map<String, Object> session = new LinkedHashMap<>();
+            session.put("feed", feed);
+            session.put("outbound", outbound.remove(feed.sessionId()));
+            sessions.add(session);
+        }
+        // sessions that only received order updates have no tick buffer
+        for (SessionOutboundStatistics statistics : outbound.values()) {
+            Map<String, Object> session = new LinkedHashMap<>();
+            session.put("feed", null);
+            session.put("outbound", statistics);
+            sessions.add(session);
+        }
+        Map<String, Object> feed = new LinkedHashMap<>();
+        feed.put("outbound", webSocketOutboundMonitor.getOutboundTotals());
+        feed.put("sessions", sessions);
+        return feed;
+    }
+}
@@ -0,0 +1,336 @@
+package com.fam.vest.config;
+
+import com.fam.vest.pojo.records.SessionOutboundStatistics;
+import com.fam.vest.service.WebSocketFeedService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Instruments the STOMP client outbound channel. Every message is stamped when it is queued on
+ * the channel and measured once the web socket handler returned, which includes the time spent
+ * waiting for the session to accept the write. Latencies and bytes are kept per session and in
+ * aggregate meters.
+ * <p>
+ * Sessions whose 95th percentile latency stays above the threshold for several evaluations in a
+ * row are downgraded to the slow tick cadence of the feed service before the transport send
+ * limits cut them off, and restored after as many healthy evaluations.
+ */
+@Slf4j
+@Component
+public class WebSocketOutboundMonitor implements ExecutorChannelInterceptor {
+
+    private static final String QUEUED_AT_HEADER = "famVestQueuedAt";
+    // log2 buckets of microseconds, the last one holds everything above 2^30 µs
+    private static final int LATENCY_BUCKETS = 32;
+
+    private final ClientSessionRegistry registry;
+    private final ObjectProvider<WebSocketFeedService> webSocketFeedService;
+    private final Map<String, SessionOutbound> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong cutOffSessions = new AtomicLong();
+    private final AtomicLong downgradedSessions = new AtomicLong();
+
+    @Value("${fam.vest.app.websocket.slow.latency.millis:500}")
+    private long slowLatencyMillis;
+
+    @Value("${fam.vest.app.websocket.slow.intervals:3}")
+    private int slowIntervals;
+
+    @Value("${fam.vest.app.websocket.slow.check.seconds:5}")
+    private long checkSeconds;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private Timer latencyTimer;
+    private DistributionSummary bytesSummary;
+    private Counter cutOffCounter;
+    private Counter downgradedCounter;
+    private ScheduledExecutorService checkScheduler;
+
+    // the feed service sends through the messaging template built on this channel, resolved lazily
+    @Autowired
+    public WebSocketOutboundMonitor(ClientSessionRegistry registry, ObjectProvider<WebSocketFeedService> webSocketFeedService) {
+        this.registry = registry;
+        this.webSocketFeedService = webSocketFeedService;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (null != this.meterRegistry) {
+            this.latencyTimer = Timer.builder("websocket.outbound.latency")
+                    .description("Time from queueing a message on the client outbound channel until it was written to the session")
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(this.meterRegistry);
+            this.bytesSummary = DistributionSummary.builder("websocket.outbound.bytes")
+                    .description("Payload size of messages written to STOMP sessions")
+                    .baseUnit("bytes")
+                    .register(this.meterRegistry);
+            this.cutOffCounter = Counter.builder("websocket.sessions.cut.off")
+                    .description("Sessions closed for exceeding the send time or send buffer limit")
+                    .register(this.meterRegistry);
+            this.downgradedCounter = Counter.builder("websocket.sessions.downgraded")
+                    .description("Sessions moved to the slow tick cadence")
+                    .register(this.meterRegistry);
+            Gauge.builder("websocket.outbound.queued", this.queued, AtomicInteger::get)
+                    .description("Messages queued or being written on the client outbound channel")
+                    .register(this.meterRegistry);
+        }
+        this.checkScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "websocket-outbound-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checkScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                this.checkSessions();
+            } catch (Exception e) {
+                log.error("Error while checking web socket sessions: {}", e.getMessage(), e);
+            }
+        }, this.checkSeconds, this.checkSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (null != this.checkScheduler) {
+            this.checkScheduler.shutdown();
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (null == sessionId || SimpMessageType.MESSAGE != SimpMessageHeaderAccessor.getMessageType(message.getHeaders())) {
+            return message;
+        }
+        this.sessions.computeIfAbsent(sessionId, SessionOutbound::new).queued();
+        this.queued.incrementAndGet();
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+        accessor.setHeader(QUEUED_AT_HEADER, System.nanoTime());
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        Long queuedAt = message.getHeaders().get(QUEUED_AT_HEADER, Long.class);
+        if (null == queuedAt) {
+            return;
+        }
+        this.queued.decrementAndGet();
+        long latencyNanos = System.nanoTime() - queuedAt;
+        int bytes = message.getPayload() instanceof byte[] payload ? payload.length : 0;
+        SessionOutbound session = this.sessions.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        if (null != session) {
+            session.handled(latencyNanos, bytes);
+        }
+        if (null != this.latencyTimer) {
+            this.latencyTimer.record(latencyNanos, TimeUnit.NANOSECONDS);
+            this.bytesSummary.record(bytes);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        SessionOutbound session = this.sessions.remove(event.getSessionId());
+        // the transport closes a session that exceeds its send time or buffer limit as not reliable
+        if (CloseStatus.SESSION_NOT_RELIABLE.equals(event.getCloseStatus())) {
+            this.cutOffSessions.incrementAndGet();
+            if (null != this.cutOffCounter) {
+                this.cutOffCounter.increment();
+            }
+            log.warn("Web socket session {} cut off by the transport send limits after {} messages",
+                    event.getSessionId(), null != session ? session.statistics().messages() : 0L);
+        }
+    }
+
+    public List<SessionOutboundStatistics> getSessionOutboundStatistics() {
+        List<SessionOutboundStatistics> statistics = new ArrayList<>(this.sessions.size());
+        this.sessions.values().forEach(session -> statistics.add(session.statistics()));
+        return statistics;
+    }
+
+    public Map<String, Object> getOutboundTotals() {
+        Map<String, Object> totals = new HashMap<>();
+        totals.put("sessions", this.sessions.size());
+        totals.put("queued", this.queued.get());
+        totals.put("cutOffSessions", this.cutOffSessions.get());
+        totals.put("downgradedSessions", this.downgradedSessions.get());
+        totals.put("slowLatencyMillis", this.slowLatencyMillis);
+        if (null != this.latencyTimer) {
+            totals.put("meanLatencyMillis", this.latencyTimer.mean(TimeUnit.MILLISECONDS));
+            totals.put("maxLatencyMillis", this.latencyTimer.max(TimeUnit.MILLISECONDS));
+            totals.put("bytes", this.bytesSummary.totalAmount());
+        }
+        return totals;
+    }
+
+    private void checkSessions() {
+        long now = System.nanoTime();
+        long slowNanos = TimeUnit.MILLISECONDS.toNanos(this.slowLatencyMillis);
+        for (SessionOutbound session : this.sessions.values()) {
+            // a message raced the disconnect event and left an entry behind
+            if (session.idle() && null == this.registry.userNameForSession(session.sessionId)) {
+                this.sessions.remove(session.sessionId);
+                continue;
+            }
+            Boolean degrade = session.evaluate(now, slowNanos, this.slowIntervals);
+            if (null == degrade) {
+                continue;
+            }
+            WebSocketFeedService feedService = this.webSocketFeedService.getIfAvailable();
+            if (null != feedService) {
+                feedService.setSessionDegraded(session.sessionId, degrade);
+            }
+            if (degrade) {
+                this.downgradedSessions.incrementAndGet();
+                if (null != this.downgradedCounter) {
+                    this.downgradedCounter.increment();
+                }
+            }
+        }
+    }
+
+    private static int bucket(long latencyNanos) {
+        long micros = Math.max(1L, latencyNanos / 1000L);
+        return Math.min(LATENCY_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+    }
+
+    // interpolated within the log2 bucket holding the percentile, -1 without samples
+    private static double percentileMillis(long[] buckets, long samples, double percentile) {
+        if (samples == 0L) {
+            return -1.0;
+        }
+        long rank = (long) Math.ceil(samples * percentile);
+        long seen = 0L;
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            if (seen + buckets[bucket] >= rank) {
+                double lower = bucket == 0 ? 0.0 : (1L << bucket);
+                double fraction = (double) (rank - seen) / buckets[bucket];
+                return (lower + fraction * ((1L << (bucket + 1)) - lower)) / 1000.0;
+            }
+            seen += buckets[bucket];
+        }
+        return (1L << LATENCY_BUCKETS) / 1000.0;
+    }
+
+    /**
+     * Outbound traffic of one session, whole life and current evaluation interval.
+     */
+    private static final class SessionOutbound {
+
+        private final String sessionId;
+        private final long[] buckets = new long[LATENCY_BUCKETS];
+        private final long[] intervalBuckets = new long[LATENCY_BUCKETS];
+        private long messages;
+        private long bytes;
+        private long latencyNanos;
+        private long maxLatencyNanos;
+        private long pending;
+        private long intervalMessages;
+        private long intervalBytes;
+        private long intervalMaxNanos;
+        private long intervalStart = System.nanoTime();
+        private double bytesPerSecond;
+        private int slow;
+        private int healthy;
+        private boolean downgraded;
+
+        private SessionOutbound(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        private synchronized boolean idle() {
+            return this.intervalMessages == 0L && this.pending <= 0L;
+        }
+
+        private synchronized void queued() {
+            this.pending++;
+        }
+
+        private synchronized void handled(long latencyNanos, int bytes) {
+            int bucket = bucket(latencyNanos);
+            this.pending--;
+            this.messages++;
+            this.bytes += bytes;
+            this.latencyNanos += latencyNanos;
+            this.maxLatencyNanos = Math.max(this.maxLatencyNanos, latencyNanos);
+            this.buckets[bucket]++;
+            this.intervalMessages++;
+            this.intervalBytes += bytes;
+            this.intervalMaxNanos = Math.max(this.intervalMaxNanos, latencyNanos);
+            this.intervalBuckets[bucket]++;
+        }
+
+        /**
+         * Closes the current interval, returns whether the session has to be downgraded or
+         * restored, null when it stays as it is.
+         */
+        private synchronized Boolean evaluate(long now, long slowNanos, int intervals) {
+            long elapsedNanos = Math.max(1L, now - this.intervalStart);
+            this.bytesPerSecond = this.intervalBytes * 1e9 / elapsedNanos;
+            double p95 = Math.min(percentileMillis(this.intervalBuckets, this.intervalMessages, 0.95), this.intervalMaxNanos / 1e6);
+            // nothing written while messages wait counts as slow too
+            boolean slowInterval = p95 >= 0.0 ? p95 * 1e6 > slowNanos : this.pending > 0L;
+            boolean idle = p95 < 0.0 && this.pending <= 0L;
+            this.intervalStart = now;
+            this.intervalMessages = 0L;
+            this.intervalBytes = 0L;
+            this.intervalMaxNanos = 0L;
+            Arrays.fill(this.intervalBuckets, 0L);
+            if (idle) {
+                return null;
+            }
+            this.slow = slowInterval ? this.slow + 1 : 0;
+            this.healthy = slowInterval ? 0 : this.healthy + 1;
+            if (!this.downgraded && this.slow >= intervals) {
+                this.downgraded = true;
+                return Boolean.TRUE;
+            }
+            if (this.downgraded && this.healthy >= intervals) {
+                this.downgraded = false;
+                return Boolean.FALSE;
+            }
+            return null;
+        }
+
+        private synchronized SessionOutboundStatistics statistics() {
+            double p95 = percentileMillis(this.buckets, this.messages, 0.95);
+            double meanMillis = this.messages > 0L ? this.latencyNanos / 1e6 / this.messages : 0.0;
+            return new SessionOutboundStatistics(this.sessionId, this.messages, this.bytes, this.bytesPerSecond,
+                    meanMillis, Math.max(0.0, Math.min(p95, this.maxLatencyNanos / 1e6)), this.maxLatencyNanos / 1e6, this.slow, this.downgraded);
+        }
+    }
+}
@@ -78,6 +78,16 @@ public class AdminController {
         return CommonUtil.success(scheduledTask, "Scheduled task status updated successfully.");
     }
 
+    @PostMapping("/tick-journal/replay")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    public ResponseEntity<Object> replayTickJournal(@RequestParam String file,
+                                                    @RequestParam(defaultValue = "1") double speed) {
+        UserDetails userDetails = UserDetailsUtil.getCurrentUserDetails();
+        log.info("Replaying tick journal {} at speed {} by admin {}", file, speed, userDetails.getUsername());
+        String response = adminService.replayTickJournal(file, speed);
+        return CommonUtil.success(response, response);
+    }
+
     @GetMapping("/users")
     @PreAuthorize("hasAuthority('ADMIN')")
     public ResponseEntity<Object> getAllApplicationUsers() {
@@ -3,6 +3,9 @@ package com.fam.vest.controller;
 import com.fam.vest.config.ClientSessionRegistry;
 import com.fam.vest.config.FontEndKiteWebSocketConnector;
 import com.fam.vest.dto.request.SubscriptionRequest;
+import com.fam.vest.service.WebSocketFeedService;
+import com.fam.vest.ticker.LastValueTickCache;
+import com.zerodhatech.models.Tick;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,24 +13,37 @@ import org.springframework.context.event.EventListener;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
 
 import java.security.Principal;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Controller
 public class WebSocketSubscriptionController {
 
+    private static final String TICKS_DESTINATION = "/user/queue/ticks";
+    private static final String TICK_ENCODING_HEADER = "x-tick-encoding";
+    private static final String COMPACT_TICK_ENCODING = "compact";
+
     private final ClientSessionRegistry registry;
     private final FontEndKiteWebSocketConnector fontEndKiteWebSocketConnector;
+    private final WebSocketFeedService webSocketFeedService;
+    private final LastValueTickCache lastValueTickCache;
 
     @Autowired
     public WebSocketSubscriptionController(ClientSessionRegistry registry,
-                                           FontEndKiteWebSocketConnector fontEndKiteWebSocketConnector) {
+                                           FontEndKiteWebSocketConnector fontEndKiteWebSocketConnector,
+                                           WebSocketFeedService webSocketFeedService,
+                                           LastValueTickCache lastValueTickCache) {
         this.registry = registry;
         this.fontEndKiteWebSocketConnector = fontEndKiteWebSocketConnector;
+        this.webSocketFeedService = webSocketFeedService;
+        this.lastValueTickCache = lastValueTickCache;
     }
 
     @MessageMapping("/subscribe")
@@ -37,11 +53,17 @@ public class WebSocketSubscriptionController {
         String sessionId = headers.getSessionId();
         String userName = principal.getName();
 
-        registry.addTokens(userName, sessionId, request.instrumentTokens());
-        log.debug("[{}] with session [{}] subscribed to {} in FamVest app web socket", userName, sessionId, request.instrumentTokens());
+        Map<Long, Byte> changedTokens = registry.addTokens(userName, sessionId, request.instrumentTokens(), request.tickMode());
+        log.debug("[{}] with session [{}] subscribed to {} in {} mode in FamVest app web socket", userName, sessionId, request.instrumentTokens(), request.mode());
+
+        // every session holds one reference per token in its latest mode, repeated subscriptions do not add more
+        fontEndKiteWebSocketConnector.subscribeWebsocket(changedTokens, request.tickMode());
+        log.debug("[{}] with session [{}] subscribed to {} in kite web socket", userName, sessionId, changedTokens.keySet());
 
-        fontEndKiteWebSocketConnector.subscribeWebsocket(request.instrumentTokens());
-        log.debug("[{}] with session [{}] subscribed to {} in kite web socket", userName, sessionId, request.instrumentTokens());
+        // last known prices right away, the session does not wait for the next tick of each token
+        List<Tick> snapshot = lastValueTickCache.snapshot(request.instrumentTokens());
+        webSocketFeedService.feedSnapshot(sessionId, snapshot);
+        log.debug("[{}] with session [{}] sent last values of {} tokens", userName, sessionId, snapshot.size());
     }
 
     @MessageMapping("/unsubscribe")
@@ -51,25 +73,34 @@ public class WebSocketSubscriptionController {
         String sessionId = headers.getSessionId();
         String userName = principal.getName();
 
-        Set<Long> tokensExclusivelyForSession = registry.tokensExclusivelyForSession(sessionId, request.instrumentTokens());
-        fontEndKiteWebSocketConnector.unsubscribeWebsocket(tokensExclusivelyForSession);
-        log.debug("[{}] with session [{}] unsubscribed to {} in kite web socket", userName, sessionId, request.instrumentTokens());
-
-        registry.removeTokens(sessionId, request.instrumentTokens());
+        Map<Long, Byte> removedTokens = registry.removeTokens(sessionId, request.instrumentTokens());
+        webSocketFeedService.forgetTicks(sessionId, request.instrumentTokens());
         log.debug("[{}] with session [{}] unsubscribed to {} in FamVest app web socket", userName, sessionId, request.instrumentTokens());
+
+        fontEndKiteWebSocketConnector.unsubscribeWebsocket(removedTokens);
+        log.debug("[{}] with session [{}] released {} in kite web socket", userName, sessionId, removedTokens.keySet());
+    }
+
+    // The tick encoding is negotiated with a header on the subscription to the tick queue
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent e) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(e.getMessage());
+        if (TICKS_DESTINATION.equals(accessor.getDestination())) {
+            boolean compact = COMPACT_TICK_ENCODING.equalsIgnoreCase(accessor.getFirstNativeHeader(TICK_ENCODING_HEADER));
+            webSocketFeedService.setTickEncoding(accessor.getSessionId(), compact);
+        }
     }
 
     // Auto‑cleanup when browser closes or WS disconnects
     @EventListener
     public void onDisconnect(SessionDisconnectEvent e) {
-        Set<Long> instrumentTokens = registry.tokensForSessionId(e.getSessionId());
-        if(null != instrumentTokens && !instrumentTokens.isEmpty()) {
-            Set<Long> tokensExclusivelyForSession = registry.tokensExclusivelyForSession(e.getSessionId(), instrumentTokens);
-            fontEndKiteWebSocketConnector.unsubscribeWebsocket(tokensExclusivelyForSession);
-            log.debug("onDisconnect: session [{}] unsubscribed to {} in kite web socket", e.getSessionId(), tokensExclusivelyForSession);
-
-            }
+        Map<Long, Byte> instrumentTokens = registry.tokenModesForSessionId(e.getSessionId());
         registry.removeSession(e.getSessionId());
+        webSocketFeedService.closeSession(e.getSessionId());
+        if(null != instrumentTokens && !instrumentTokens.isEmpty()) {
+            fontEndKiteWebSocketConnector.unsubscribeWebsocket(Map.copyOf(instrumentTokens));
+            log.debug("onDisconnect: session [{}] released {} in kite web socket", e.getSessionId(), instrumentTokens.keySet());
+        }
         log.debug("onDisconnect: [{}] disconnected to FamVest app web socket", e.getSessionId());
     }
 }
@@ -1,5 +1,15 @@
 package com.fam.vest.dto.request;
 
+import com.fam.vest.ticker.PrimitiveTick;
+import jakarta.validation.constraints.Pattern;
+
 import java.util.Set;
 
-public record SubscriptionRequest(Set<Long> instrumentTokens) {}
+// mode is the tick mode the client needs for the tokens, full when it is not given
+public record SubscriptionRequest(Set<Long> instrumentTokens,
+                                  @Pattern(regexp = "ltp|quote|full", message = "Mode must be one of ltp, quote or full") String mode) {
+
+    public byte tickMode() {
+        return null == mode ? PrimitiveTick.MODE_FULL : PrimitiveTick.modeOf(mode);
+    }
+}
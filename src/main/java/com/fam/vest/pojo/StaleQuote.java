@@ -0,0 +1,12 @@
+package com.fam.vest.pojo;
+
+import com.zerodhatech.models.Quote;
+
+/**
+ * Quote built from the last known tick of an instrument that did not tick again within the
+ * quote deadline. Its price may be old, callers that trade on it should check {@link #stale}.
+ */
+public class StaleQuote extends Quote {
+
+    public final boolean stale = true;
+}
@@ -0,0 +1,9 @@
+package com.fam.vest.pojo.records;
+
+/**
+ * Tick delivery counters of one STOMP session. Conflated ticks were replaced by a newer tick of
+ * the same instrument before the session buffer was flushed and never reached the client. A degraded
+ * session was found too slow to keep up and is flushed at the slow session cadence.
+ */
+public record SessionFeedStatistics(String sessionId, String userName, long receivedTicks, long sentTicks,
+                                    long conflatedTicks, int pendingTicks, long flushes, boolean degraded) {}
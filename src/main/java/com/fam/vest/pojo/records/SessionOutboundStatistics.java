@@ -0,0 +1,9 @@
+package com.fam.vest.pojo.records;
+
+/**
+ * Outbound STOMP traffic of one session as seen on the client outbound channel. Latencies run
+ * from the message being queued on the channel until the web socket write returned.
+ */
+public record SessionOutboundStatistics(String sessionId, long messages, long bytes, double bytesPerSecond,
+                                        double meanLatencyMillis, double p95LatencyMillis, double maxLatencyMillis,
+                                        int slowIntervals, boolean downgraded) {}
@@ -9,4 +9,6 @@ public interface AdminService {
     void restartApplication();
 
     void notifySchedulerErrors();
+
+    String replayTickJournal(String journalFile, double speed);
 }
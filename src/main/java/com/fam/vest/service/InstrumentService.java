@@ -3,6 +3,7 @@ package com.fam.vest.service;
 import com.fam.vest.entity.Instrument;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface InstrumentService {
 
@@ -10,6 +11,12 @@ public interface InstrumentService {
 
     Instrument getByTradingSymbol(String tradingSymbol);
 
+    /**
+     * Looks the instrument up in the in-memory index, without a database round trip once the
+     * index is built.
+     */
+    Optional<Instrument> findByTradingSymbolAndExchange(String tradingSymbol, String exchange);
+
     Instrument getByTradingSymbolAndExchange(String symbol, String exchange);
 
     Instrument getByInstrumentToken(Long instrumentToken);
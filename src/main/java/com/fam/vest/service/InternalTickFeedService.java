@@ -1,12 +1,38 @@
 package com.fam.vest.service;
 
-import com.zerodhatech.models.Tick;
+import com.fam.vest.ticker.PrimitiveTick;
 
-import java.util.List;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 
 public interface InternalTickFeedService {
 
-    Tick getLatestTick(Long instrumentToken);
+    PrimitiveTick getLatestTick(Long instrumentToken);
 
-    void feedTicks(List<Tick> ticks);
+    /**
+     * Copies of the latest ticks of the instruments in one pass, aligned with the tokens and null
+     * where an instrument has no tick yet.
+     */
+    PrimitiveTick[] getLatestTicks(long[] instrumentTokens);
+
+    void feedTick(PrimitiveTick tick);
+
+    /**
+     * Completes with a copy of the first tick of the instrument fed at or after
+     * {@code receivedSince}, or with null once the timeout passed without one. Callers pass the
+     * time they read the latest ticks at, so a tick fed in between is not missed. The future is
+     * shared by all callers waiting on the instrument and completed on the thread feeding the
+     * tick, dependent work has to run on an executor of its own.
+     */
+    CompletableFuture<PrimitiveTick> awaitTick(Long instrumentToken, long receivedSince, Duration timeout);
+
+    long getLastReadAt(Long instrumentToken);
+
+    /**
+     * Whether the latest tick of the instrument was restored from the snapshot saved before the
+     * last restart and no live tick confirmed it yet.
+     */
+    boolean isRestored(Long instrumentToken);
+
+    void evictTick(Long instrumentToken);
 }
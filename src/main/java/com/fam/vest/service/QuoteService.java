@@ -2,11 +2,42 @@ package com.fam.vest.service;
 
 import com.zerodhatech.models.Quote;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface QuoteService {
 
     Map<String, Quote> getQuote(String instrument);
 
+    /**
+     * Current quotes of the instruments. An instrument whose last tick went stale and did not
+     * tick again within the deadline is left out.
+     */
     Map<String, Quote> getQuotes(String[] instruments);
+
+    /**
+     * Same as {@link #getQuotes(String[])}, with {@code allowStale} an instrument whose last tick
+     * went stale is quoted from it as a {@link com.fam.vest.pojo.StaleQuote} rather than left out.
+     * Never for trading decisions.
+     */
+    Map<String, Quote> getQuotes(String[] instruments, boolean allowStale);
+
+    /**
+     * Quotes the instruments without blocking, instruments that are not streaming yet are
+     * quoted as soon as their first tick arrives. Waits up to the configured tick wait.
+     */
+    CompletableFuture<Map<String, Quote>> getQuotesAsync(String[] instruments);
+
+    /**
+     * Same as {@link #getQuotesAsync(String[])}, completing with the quotes known at the
+     * deadline when some instruments did not tick by then.
+     */
+    CompletableFuture<Map<String, Quote>> getQuotesAsync(String[] instruments, Duration deadline);
+
+    /**
+     * Same as {@link #getQuotesAsync(String[], Duration)}, quoting stale instruments as
+     * {@link #getQuotes(String[], boolean)} does.
+     */
+    CompletableFuture<Map<String, Quote>> getQuotesAsync(String[] instruments, Duration deadline, boolean allowStale);
 }
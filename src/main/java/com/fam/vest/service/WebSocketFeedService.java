@@ -1,13 +1,40 @@
 package com.fam.vest.service;
 
 import com.fam.vest.pojo.OrderUpdate;
+import com.fam.vest.pojo.records.SessionFeedStatistics;
 import com.zerodhatech.models.Tick;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface WebSocketFeedService {
 
     void feedTicks(List<Tick> ticks);
 
+    /**
+     * Sends the ticks to the session right away, ahead of the next flush.
+     */
+    void feedSnapshot(String sessionId, List<Tick> ticks);
+
     void feedOrderUpdates(OrderUpdate orderUpdate);
+
+    /**
+     * Switches the tick frames of the session between plain json and the compact delta encoding.
+     */
+    void setTickEncoding(String sessionId, boolean compact);
+
+    /**
+     * Forgets what the session was sent for the tokens, so a later subscription starts from a full snapshot.
+     */
+    void forgetTicks(String sessionId, Collection<Long> instrumentTokens);
+
+    /**
+     * Moves the session to or off the slow cadence, ticks of a degraded session are conflated and
+     * flushed less often whatever the configured flush interval is.
+     */
+    void setSessionDegraded(String sessionId, boolean degraded);
+
+    void closeSession(String sessionId);
+
+    List<SessionFeedStatistics> getSessionFeedStatistics();
 }
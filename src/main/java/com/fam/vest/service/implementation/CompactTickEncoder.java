@@ -0,0 +1,142 @@
+package com.fam.vest.service.implementation;
+
+import com.fam.vest.ticker.KiteTickDecoder;
+import com.fam.vest.ticker.PrimitiveTick;
+import com.zerodhatech.models.Tick;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact tick encoding a STOMP session can ask for with an {@code x-tick-encoding: compact}
+ * header on its tick subscription. A frame is a JSON array with one array per instrument,
+ * {@code [token, field, value, field, value, ...]}, holding only the fields that changed since
+ * the previous frame of the session; the first frame of an instrument carries every field.
+ * Prices are integers scaled by the {@link #DECIMALS} field, times are epoch seconds and the
+ * depth is one flat array of quantity, price and orders for the five buy then five sell levels.
+ * The change percentage is left to the client to derive from the last and close prices.
+ * <p>
+ * An encoder keeps the last values sent to one session, so it must only be used under the lock
+ * of that session.
+ */
+final class CompactTickEncoder {
+
+    static final String ENCODING = "compact";
+
+    static final int DECIMALS = 0;
+    static final int MODE = 1;
+    static final int TRADABLE = 2;
+    static final int LAST_TRADED_PRICE = 3;
+    static final int HIGH_PRICE = 4;
+    static final int LOW_PRICE = 5;
+    static final int OPEN_PRICE = 6;
+    static final int CLOSE_PRICE = 7;
+    static final int LAST_TRADED_QUANTITY = 8;
+    static final int AVERAGE_TRADE_PRICE = 9;
+    static final int VOLUME_TRADED_TODAY = 10;
+    static final int TOTAL_BUY_QUANTITY = 11;
+    static final int TOTAL_SELL_QUANTITY = 12;
+    static final int LAST_TRADED_TIME = 13;
+    static final int OI = 14;
+    static final int OI_DAY_HIGH = 15;
+    static final int OI_DAY_LOW = 16;
+    static final int TICK_TIMESTAMP = 17;
+    static final int DEPTH = 18;
+
+    private static final int DEPTH_VALUES = PrimitiveTick.DEPTH_LEVELS * 3;
+
+    private final Map<Long, long[]> lastSent = new HashMap<>();
+    private final PrimitiveTick scratch = new PrimitiveTick();
+    private final long[] values = new long[DEPTH + DEPTH_VALUES];
+
+    /**
+     * Encodes the changes carried by the ticks, or returns null when none of them changed
+     * anything the session has not seen yet.
+     */
+    byte[] encode(List<Tick> ticks) {
+        StringBuilder frame = new StringBuilder(ticks.size() * 32).append('[');
+        boolean empty = true;
+        for (Tick tick : ticks) {
+            this.scratch.copyFrom(tick, true);
+            this.read(this.scratch);
+            long[] previous = this.lastSent.get(this.scratch.getInstrumentToken());
+            boolean snapshot = null == previous;
+            if (snapshot) {
+                previous = new long[this.values.length];
+                this.lastSent.put(this.scratch.getInstrumentToken(), previous);
+            }
+            int start = frame.length();
+            frame.append(empty ? "[" : ",[").append(this.scratch.getInstrumentToken());
+            int fields = 0;
+            for (int field = 0; field < DEPTH; field++) {
+                if (snapshot || previous[field] != this.values[field]) {
+                    frame.append(',').append(field).append(',').append(this.values[field]);
+                    previous[field] = this.values[field];
+                    fields++;
+                }
+            }
+            if (this.scratch.isDepthAvailable()
+                    && (snapshot || !Arrays.equals(previous, DEPTH, this.values.length, this.values, DEPTH, this.values.length))) {
+                frame.append(',').append(DEPTH).append(",[");
+                for (int i = DEPTH; i < this.values.length; i++) {
+                    frame.append(i > DEPTH ? "," : "").append(this.values[i]);
+                }
+                frame.append(']');
+                System.arraycopy(this.values, DEPTH, previous, DEPTH, DEPTH_VALUES);
+                fields++;
+            }
+            if (fields == 0) {
+                frame.setLength(start);
+                continue;
+            }
+            frame.append(']');
+            empty = false;
+        }
+        return empty ? null : frame.append(']').toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Drops what was sent for the tokens, their next frame is a full snapshot again.
+     */
+    void forget(Collection<Long> tokens) {
+        tokens.forEach(this.lastSent::remove);
+    }
+
+    private void read(PrimitiveTick tick) {
+        int divisor = KiteTickDecoder.priceDivisor((int) tick.getInstrumentToken() & 255);
+        this.values[DECIMALS] = String.valueOf(divisor).length() - 1;
+        this.values[MODE] = tick.getMode();
+        this.values[TRADABLE] = tick.isTradable() ? 1L : 0L;
+        this.values[LAST_TRADED_PRICE] = scaled(tick.getLastTradedPrice(), divisor);
+        this.values[HIGH_PRICE] = scaled(tick.getHighPrice(), divisor);
+        this.values[LOW_PRICE] = scaled(tick.getLowPrice(), divisor);
+        this.values[OPEN_PRICE] = scaled(tick.getOpenPrice(), divisor);
+        this.values[CLOSE_PRICE] = scaled(tick.getClosePrice(), divisor);
+        this.values[LAST_TRADED_QUANTITY] = Math.round(tick.getLastTradedQuantity());
+        this.values[AVERAGE_TRADE_PRICE] = scaled(tick.getAverageTradePrice(), divisor);
+        this.values[VOLUME_TRADED_TODAY] = tick.getVolumeTradedToday();
+        this.values[TOTAL_BUY_QUANTITY] = Math.round(tick.getTotalBuyQuantity());
+        this.values[TOTAL_SELL_QUANTITY] = Math.round(tick.getTotalSellQuantity());
+        this.values[LAST_TRADED_TIME] = tick.getLastTradedTime() / 1000L;
+        this.values[OI] = Math.round(tick.getOi());
+        this.values[OI_DAY_HIGH] = Math.round(tick.getOpenInterestDayHigh());
+        this.values[OI_DAY_LOW] = Math.round(tick.getOpenInterestDayLow());
+        this.values[TICK_TIMESTAMP] = tick.getTickTimestamp() / 1000L;
+        if (tick.isDepthAvailable()) {
+            for (int level = 0; level < PrimitiveTick.DEPTH_LEVELS; level++) {
+                int index = DEPTH + level * 3;
+                this.values[index] = tick.getDepthQuantity(level);
+                this.values[index + 1] = scaled(tick.getDepthPrice(level), divisor);
+                this.values[index + 2] = tick.getDepthOrders(level);
+            }
+        }
+    }
+
+    private static long scaled(double price, int divisor) {
+        return Math.round(price * divisor);
+    }
+}
@@ -1,8 +1,11 @@
 package com.fam.vest.service.implementation;
 
+import com.fam.vest.config.KiteTickBus;
 import com.fam.vest.entity.ApplicationUser;
 import com.fam.vest.entity.ScheduledTask;
 import com.fam.vest.entity.converter.EncryptionUtils;
+import com.fam.vest.exception.ResourceNotFoundException;
+import com.fam.vest.exception.ValidationException;
 import com.fam.vest.pojo.email.ResendEmailPayload;
 import com.fam.vest.repository.ApplicationUserRepository;
 import com.fam.vest.repository.ScheduledTaskRepository;
@@ -14,6 +17,8 @@ import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -28,6 +33,7 @@ public class IAdminService implements AdminService {
     private final ScheduledTaskRepository scheduledTaskRepository;
     private final EmailService emailService;
     private final TemplateEngine templateEngine;
+    private final KiteTickBus kiteTickBus;
 
     @Override
     public void captureSnapshot() {
@@ -67,6 +73,38 @@ public class IAdminService implements AdminService {
         }
     }
 
+    @Override
+    public String replayTickJournal(String journalFile, double speed) {
+        Path journalDirectory = kiteTickBus.getTickJournalDirectory().toAbsolutePath().normalize();
+        Path journalPath = journalDirectory.resolve(journalFile).normalize();
+        if (!journalPath.startsWith(journalDirectory)) {
+            throw new ValidationException("Tick journal must be inside the journal directory");
+        }
+        if (!Files.isRegularFile(journalPath)) {
+            throw new ResourceNotFoundException("Tick journal not found: " + journalFile);
+        }
+        // replayed ticks reach the live quote caches and browser sessions, never mix them with kite ticks
+        if (kiteTickBus.isWebsocketAvailable()) {
+            throw new ValidationException("Tick journal replay is only allowed while the kite tick bus has no kite connection");
+        }
+        if (kiteTickBus.isReplaying()) {
+            throw new ValidationException("A tick journal replay is already running");
+        }
+        // replay at recorded pace can run for hours, so it gets its own thread
+        Thread replayThread = new Thread(() -> {
+            try {
+                kiteTickBus.replayJournal(journalPath, speed);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error while replaying tick journal {}: {}", journalPath, e.getMessage(), e);
+            }
+        }, "tick-journal-replay");
+        replayThread.setDaemon(true);
+        replayThread.start();
+        return "Replay of " + journalFile + " started on kite tick bus";
+    }
+
     private String getEmailBody(String subject, List<ScheduledTask> scheduledTasks) {
         // Create inner content context
         Context reportContext = new Context();
@@ -12,14 +12,19 @@ import com.fam.vest.util.InstrumentFormatter;
 import com.zerodhatech.kiteconnect.KiteConnect;
 import com.zerodhatech.kiteconnect.kitehttp.exceptions.KiteException;
 import io.micrometer.common.util.StringUtils;
+import jakarta.annotation.PreDestroy;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Slf4j
 @Service
@@ -30,6 +35,13 @@ public class IInstrumentService implements InstrumentService {
     private final TradingAccountRepository tradingAccountRepository;
     private final KiteConnector kiteConnector;
     private final WatchlistInstrumentRepository watchlistInstrumentRepository;
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "instrument-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // lookups go to the database until the first index is built
+    private volatile InstrumentIndex instrumentIndex = InstrumentIndex.EMPTY;
 
     @Value("${fam.vest.app.internal.trading.user}")
     private String internalTradingUser;
@@ -50,6 +62,7 @@ public class IInstrumentService implements InstrumentService {
             log.info("Fetched total {} instruments from Kite", instruments.size());
             this.cleanupWatchlistInstruments();
             this.saveInstruments(instruments, tradingAccount);
+            this.rebuildIndex();
         } catch (IOException e) {
             log.error("IOException while fetching instruments", e);
         } catch (KiteException e) {
@@ -57,6 +70,29 @@ public class IInstrumentService implements InstrumentService {
         }
     }
 
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIndex() {
+        indexExecutor.execute(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                InstrumentIndex index = InstrumentIndex.of(instrumentRepository.findAll());
+                if (index.isEmpty()) {
+                    log.warn("No instruments in local database, keeping the current instrument index");
+                    return;
+                }
+                instrumentIndex = index;
+                log.info("Instrument index built with {} instruments in {} ms", index.size(), index.builtAt() - start);
+            } catch (Exception e) {
+                log.error("Error while building instrument index: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexExecutor.shutdown();
+    }
+
     private void cleanupWatchlistInstruments() {
         log.info("Deleting expired watchlist instruments");
         watchlistInstrumentRepository.deleteExpiredWatchlistInstruments();
@@ -135,15 +171,22 @@ public class IInstrumentService implements InstrumentService {
         return instrument.orElseThrow(() -> new ResourceNotFoundException("Instrument not found for symbol: " + tradingSymbol));
     }
 
+    @Override
+    public Optional<Instrument> findByTradingSymbolAndExchange(String tradingSymbol, String exchange) {
+        InstrumentIndex index = instrumentIndex;
+        return index.isEmpty() ? instrumentRepository.findByTradingSymbolAndExchange(tradingSymbol, exchange) : index.bySymbol(exchange, tradingSymbol);
+    }
+
     @Override
     public Instrument getByTradingSymbolAndExchange(String tradingSymbol, String exchange) {
-        Optional<Instrument> instrument = instrumentRepository.findByTradingSymbolAndExchange(tradingSymbol, exchange);
+        Optional<Instrument> instrument = this.findByTradingSymbolAndExchange(tradingSymbol, exchange);
         return instrument.orElseThrow(() -> new ResourceNotFoundException("Instrument not found for symbol: " + tradingSymbol+" and exchange: " + exchange));
     }
 
     @Override
     public Instrument getByInstrumentToken(Long instrumentToken) {
-        Optional<Instrument> instrument = instrumentRepository.findByInstrumentToken(instrumentToken);
+        InstrumentIndex index = instrumentIndex;
+        Optional<Instrument> instrument = index.isEmpty() ? instrumentRepository.findByInstrumentToken(instrumentToken) : index.byToken(instrumentToken);
         return instrument.orElseThrow(() -> new ResourceNotFoundException("Instrument not found for instrument token: " + instrumentToken));
     }
 
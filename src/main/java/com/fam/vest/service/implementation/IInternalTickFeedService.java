@@ -1,30 +1,248 @@
 package com.fam.vest.service.implementation;
 
 import com.fam.vest.service.InternalTickFeedService;
-import com.zerodhatech.models.Tick;
+import com.fam.vest.ticker.PrimitiveTick;
+import com.fam.vest.ticker.TickSnapshotFile;
+import com.fam.vest.util.ConcurrentLongObjectMap;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Service
 public class IInternalTickFeedService implements InternalTickFeedService {
 
-    // Store latest tick per instrument
-    private final ConcurrentMap<Long, Tick> latestTicks = new ConcurrentHashMap<>();
+    // Store latest tick per instrument, each slot is updated in place by the websocket reader
+    private final ConcurrentLongObjectMap<PrimitiveTick> latestTicks = new ConcurrentLongObjectMap<>();
+    // last time each instrument was read, lets idle internal subscriptions be released
+    private final ConcurrentLongObjectMap<AtomicLong> lastReads = new ConcurrentLongObjectMap<>();
+    // when the latest live tick of each instrument was fed
+    private final ConcurrentLongObjectMap<AtomicLong> receivedAt = new ConcurrentLongObjectMap<>();
+    // callers waiting for the next tick of an instrument, compound updates hold the map's lock
+    private final ConcurrentLongObjectMap<TickWaiter> tickWaiters = new ConcurrentLongObjectMap<>();
+    // ticks restored from the last snapshot and not confirmed by a live tick yet, with their receive time
+    private final ConcurrentLongObjectMap<Long> restoredTicks = new ConcurrentLongObjectMap<>();
+    private ScheduledExecutorService snapshotScheduler;
+
+    // zero or less neither restores nor saves snapshots
+    @Value("${fam.vest.app.internal.tick.snapshot.seconds:30}")
+    private long snapshotSeconds;
+
+    @Value("${fam.vest.app.internal.tick.snapshot.file:snapshot/internal-ticks.snapshot}")
+    private String snapshotFile;
+
+    @Value("${fam.vest.app.internal.tick.snapshot.max.age.hours:24}")
+    private long snapshotMaxAgeHours;
+
+    @PostConstruct
+    public void init() {
+        if (snapshotSeconds <= 0L) {
+            return;
+        }
+        this.restoreSnapshot();
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "internal-tick-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::saveSnapshot, snapshotSeconds, snapshotSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (null != snapshotScheduler) {
+            snapshotScheduler.shutdown();
+            this.saveSnapshot();
+        }
+    }
 
     @Override
-    public Tick getLatestTick(Long instrument) {
-        return latestTicks.get(instrument);
+    public PrimitiveTick getLatestTick(Long instrument) {
+        AtomicLong lastRead = lastReads.get(instrument);
+        if (null == lastRead) {
+            lastRead = lastReads.computeIfAbsent(instrument, token -> new AtomicLong());
+        }
+        lastRead.set(System.currentTimeMillis());
+        PrimitiveTick slot = latestTicks.get(instrument);
+        if (null == slot) {
+            return null;
+        }
+        PrimitiveTick snapshot = new PrimitiveTick();
+        synchronized (slot) {
+            snapshot.copyFrom(slot);
+        }
+        return snapshot;
     }
 
     @Override
-    public void feedTicks(List<Tick> ticks) {
-        ticks.forEach(tick -> {
-            latestTicks.put(tick.getInstrumentToken(), tick);
-        });
+    public PrimitiveTick[] getLatestTicks(long[] instrumentTokens) {
+        long now = System.currentTimeMillis();
+        PrimitiveTick[] snapshots = new PrimitiveTick[instrumentTokens.length];
+        for (int i = 0; i < instrumentTokens.length; i++) {
+            long instrument = instrumentTokens[i];
+            AtomicLong lastRead = lastReads.get(instrument);
+            if (null == lastRead) {
+                lastRead = lastReads.computeIfAbsent(instrument, token -> new AtomicLong());
+            }
+            lastRead.set(now);
+            PrimitiveTick slot = latestTicks.get(instrument);
+            if (null != slot) {
+                snapshots[i] = new PrimitiveTick();
+                synchronized (slot) {
+                    snapshots[i].copyFrom(slot);
+                }
+            }
+        }
+        return snapshots;
+    }
+
+    @Override
+    public void feedTick(PrimitiveTick tick) {
+        PrimitiveTick slot = latestTicks.get(tick.getInstrumentToken());
+        if (null == slot) {
+            slot = latestTicks.computeIfAbsent(tick.getInstrumentToken(), token -> new PrimitiveTick());
+        }
+        synchronized (slot) {
+            slot.copyFrom(tick);
+        }
+        AtomicLong tickReceivedAt = receivedAt.get(tick.getInstrumentToken());
+        if (null == tickReceivedAt) {
+            tickReceivedAt = receivedAt.computeIfAbsent(tick.getInstrumentToken(), token -> new AtomicLong());
+        }
+        // published before the waiters are looked up, a waiter registered meanwhile sees it in awaitTick
+        tickReceivedAt.set(System.currentTimeMillis());
+        if (null != restoredTicks.get(tick.getInstrumentToken())) {
+            restoredTicks.remove(tick.getInstrumentToken());
+        }
+        if (null != tickWaiters.get(tick.getInstrumentToken())) {
+            TickWaiter waiter = tickWaiters.remove(tick.getInstrumentToken());
+            if (null != waiter) {
+                PrimitiveTick snapshot = new PrimitiveTick();
+                snapshot.copyFrom(tick);
+                waiter.tick.complete(snapshot);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRestored(Long instrumentToken) {
+        return null != restoredTicks.get(instrumentToken);
+    }
+
+    @Override
+    public CompletableFuture<PrimitiveTick> awaitTick(Long instrumentToken, long receivedSince, Duration timeout) {
+        TickWaiter waiter;
+        synchronized (tickWaiters) {
+            waiter = tickWaiters.computeIfAbsent(instrumentToken, token -> new TickWaiter());
+            waiter.expiresAt = Math.max(waiter.expiresAt, System.currentTimeMillis() + timeout.toMillis());
+        }
+        CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS).execute(() -> this.expireWaiter(instrumentToken, waiter));
+        // a tick fed after the caller's read but before the waiter was registered completed no waiter
+        AtomicLong tickReceivedAt = receivedAt.get(instrumentToken);
+        PrimitiveTick slot = latestTicks.get(instrumentToken);
+        if (null != tickReceivedAt && tickReceivedAt.get() >= receivedSince && null != slot) {
+            PrimitiveTick snapshot = new PrimitiveTick();
+            synchronized (slot) {
+                snapshot.copyFrom(slot);
+            }
+            return CompletableFuture.completedFuture(snapshot);
+        }
+        return waiter.tick;
+    }
+
+    @Override
+    public long getLastReadAt(Long instrumentToken) {
+        AtomicLong lastRead = lastReads.get(instrumentToken);
+        return null == lastRead ? 0L : lastRead.get();
+    }
+
+    @Override
+    public void evictTick(Long instrumentToken) {
+        latestTicks.remove(instrumentToken);
+        lastReads.remove(instrumentToken);
+        receivedAt.remove(instrumentToken);
+        restoredTicks.remove(instrumentToken);
+    }
+
+    // once the last caller of a waiter gave up it is dropped and completed empty
+    private void expireWaiter(long instrumentToken, TickWaiter waiter) {
+        synchronized (tickWaiters) {
+            if (tickWaiters.get(instrumentToken) != waiter) {
+                return;
+            }
+            long remainingMillis = waiter.expiresAt - System.currentTimeMillis();
+            if (remainingMillis > 0L) {
+                // extended by a later caller, or the delayed executor fired ahead of the wall clock
+                CompletableFuture.delayedExecutor(remainingMillis, TimeUnit.MILLISECONDS).execute(() -> this.expireWaiter(instrumentToken, waiter));
+                return;
+            }
+            tickWaiters.remove(instrumentToken);
+        }
+        waiter.tick.complete(null);
+    }
+
+    // bulk restore before anyone reads, the restored ticks count as stale until a live tick confirms them
+    private void restoreSnapshot() {
+        Path file = Paths.get(snapshotFile);
+        long notBefore = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(snapshotMaxAgeHours);
+        try {
+            long start = System.currentTimeMillis();
+            int restored = TickSnapshotFile.read(file, notBefore, (tick, receivedAt) -> {
+                PrimitiveTick slot = new PrimitiveTick();
+                slot.copyFrom(tick);
+                latestTicks.put(tick.getInstrumentToken(), slot);
+                restoredTicks.put(tick.getInstrumentToken(), receivedAt);
+            });
+            if (restored > 0) {
+                log.info("Restored {} internal ticks from snapshot {} in {} ms", restored, file, System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            log.error("Error while restoring internal ticks from snapshot {}: {}", file, e.getMessage(), e);
+        }
+    }
+
+    private void saveSnapshot() {
+        Path file = Paths.get(snapshotFile);
+        try {
+            long now = System.currentTimeMillis();
+            long notBefore = now - TimeUnit.HOURS.toMillis(snapshotMaxAgeHours);
+            // restored ticks nobody confirmed age out instead of being carried from snapshot to snapshot
+            for (long token : restoredTicks.keys()) {
+                Long receivedAt = restoredTicks.get(token);
+                if (null != receivedAt && receivedAt < notBefore) {
+                    latestTicks.remove(token);
+                    restoredTicks.remove(token);
+                }
+            }
+            // the time a tick actually arrived, so an idle token does not look fresh snapshot after snapshot
+            int saved = TickSnapshotFile.write(file, latestTicks, token -> {
+                Long restoredAt = restoredTicks.get(token);
+                if (null != restoredAt) {
+                    return restoredAt;
+                }
+                AtomicLong tickReceivedAt = receivedAt.get(token);
+                return null != tickReceivedAt ? tickReceivedAt.get() : 0L;
+            });
+            log.debug("Saved {} internal ticks to snapshot {} in {} ms", saved, file, System.currentTimeMillis() - now);
+        } catch (Exception e) {
+            log.error("Error while saving internal ticks to snapshot {}: {}", file, e.getMessage(), e);
+        }
+    }
+
+    private static final class TickWaiter {
+        private final CompletableFuture<PrimitiveTick> tick = new CompletableFuture<>();
+        // latest deadline of the callers sharing the waiter, guarded by the waiter map
+        private long expiresAt;
     }
 }
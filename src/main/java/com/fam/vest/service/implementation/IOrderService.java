@@ -82,8 +82,15 @@ public class IOrderService implements OrderService {
 
     private void getOrders(KiteConnect kiteConnect, Long tradingAccountId, List<OrderDetails> orderDetails, AtomicLong sequenceNumber) throws KiteException, IOException {
         List<Order> orders = kiteConnect.getOrders();
+        // one quote call for the whole page, instruments that are not streaming yet are awaited together
+        String[] quoteInstruments = orders.stream()
+                .map(order -> order.exchange + ":" + order.tradingSymbol)
+                .distinct()
+                .toArray(String[]::new);
+        // stale instruments are left out and shown with the instrument's last price instead
+        Map<String, Quote> quotes = quoteInstruments.length == 0 ? Map.of() : quoteService.getQuotes(quoteInstruments, false);
         orders.forEach(order -> {
-            OrderDetails orderDetail = this.convertToOrderDetails(order, tradingAccountId, kiteConnect.getUserId());
+            OrderDetails orderDetail = this.convertToOrderDetails(order, tradingAccountId, kiteConnect.getUserId(), quotes);
             orderDetail.setSequenceNumber(sequenceNumber.getAndIncrement());
             orderDetails.add(orderDetail);
         });
@@ -91,7 +98,7 @@ public class IOrderService implements OrderService {
         orderDetails.sort((o1, o2) -> o2.getOrder().orderTimestamp.compareTo(o1.getOrder().orderTimestamp));
     }
 
-    private OrderDetails convertToOrderDetails(Order order, Long tradingAccountId, String userId) {
+    private OrderDetails convertToOrderDetails(Order order, Long tradingAccountId, String userId, Map<String, Quote> quote) {
         OrderDetails orderDetails = new OrderDetails();
         orderDetails.setTradingAccountId(tradingAccountId);
         orderDetails.setUserId(userId);
@@ -104,7 +111,6 @@ public class IOrderService implements OrderService {
                 displayName = instrument.getDisplayName();
                 orderDetails.setInstrumentToken(instrument.getInstrumentToken());
                 String quoteInstrument = instrument.getExchange() + ":" + instrument.getTradingSymbol();
-                Map<String, Quote> quote = quoteService.getQuote(quoteInstrument);
                 if (quote.containsKey(quoteInstrument)) {
                     Quote instrumentQuote = quote.get(quoteInstrument);
                     orderDetails.setLastPrice(instrumentQuote.lastPrice);
@@ -1,24 +1,35 @@
 package com.fam.vest.service.implementation;
 
 import com.fam.vest.config.KiteConnector;
+import com.fam.vest.config.KiteTickBus;
 import com.fam.vest.entity.Instrument;
 import com.fam.vest.entity.TradingAccount;
 import com.fam.vest.exception.RequestTokenMissingException;
-import com.fam.vest.repository.InstrumentRepository;
+import com.fam.vest.pojo.StaleQuote;
 import com.fam.vest.repository.TradingAccountRepository;
+import com.fam.vest.service.InstrumentService;
 import com.fam.vest.service.InternalTickFeedService;
 import com.fam.vest.service.InternalTickSubscriptionService;
 import com.fam.vest.service.QuoteService;
+import com.fam.vest.ticker.PrimitiveTick;
 import com.zerodhatech.kiteconnect.KiteConnect;
 import com.zerodhatech.kiteconnect.kitehttp.exceptions.KiteException;
 import com.zerodhatech.models.Quote;
-import com.zerodhatech.models.Tick;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @Slf4j
@@ -29,18 +40,29 @@ public class IQuoteService implements QuoteService {
     private KiteConnector kiteConnector;
     private final InternalTickSubscriptionService internalTickSubscriptionService;
     private final InternalTickFeedService internalTickFeedService;
-    private final InstrumentRepository instrumentRepository;
+    private final InstrumentService instrumentService;
+    private final KiteTickBus kiteTickBus;
+    private final ExecutorService quoteExecutor;
+    private KiteQuoteGateway kiteQuoteGateway;
 
     public IQuoteService(TradingAccountRepository tradingAccountRepository,
                          KiteConnector kiteConnector,
                          InternalTickSubscriptionService internalTickSubscriptionService,
                          InternalTickFeedService internalTickFeedService,
-                         InstrumentRepository instrumentRepository) {
+                         InstrumentService instrumentService,
+                         KiteTickBus kiteTickBus) {
         this.tradingAccountRepository = tradingAccountRepository;
         this.kiteConnector = kiteConnector;
         this.internalTickSubscriptionService = internalTickSubscriptionService;
         this.internalTickFeedService = internalTickFeedService;
-        this.instrumentRepository = instrumentRepository;
+        this.instrumentService = instrumentService;
+        this.kiteTickBus = kiteTickBus;
+        AtomicInteger threads = new AtomicInteger();
+        this.quoteExecutor = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "quote-fetch-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Value("${fam.vest.app.data.streaming.user}")
@@ -49,6 +71,38 @@ public class IQuoteService implements QuoteService {
     @Value("${fam.vest.app.is.custom.data.streaming:true}")
     private boolean isCustomDataStreaming;
 
+    // longest a quote call waits for the first tick of instruments that were not streaming yet
+    @Value("${fam.vest.app.quote.tick.wait.millis:3000}")
+    private long tickWaitMillis;
+
+    // kite REST quote calls: merge window, instruments per call and calls per second
+    @Value("${fam.vest.app.kite.quote.batch.window.millis:5}")
+    private long quoteBatchWindowMillis;
+
+    @Value("${fam.vest.app.kite.quote.batch.size:500}")
+    private int quoteBatchSize;
+
+    @Value("${fam.vest.app.kite.quote.rate.per.second:1}")
+    private double quoteRatePerSecond;
+
+    @Value("${fam.vest.app.kite.quote.rate.burst:1}")
+    private int quoteRateBurst;
+
+    @PostConstruct
+    public void init() {
+        kiteQuoteGateway = new KiteQuoteGateway(instruments -> {
+            TradingAccount tradingAccount = tradingAccountRepository.findTradingAccountByUserId(dataStreamingUser);
+            KiteConnect kiteConnect = kiteConnector.getKiteConnect(tradingAccount);
+            return kiteConnect.getQuote(instruments);
+        }, quoteBatchWindowMillis, quoteBatchSize, quoteRatePerSecond, quoteRateBurst);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        quoteExecutor.shutdown();
+        kiteQuoteGateway.shutdown();
+    }
+
     @Override
     public Map<String, Quote> getQuote(String instrument) {
        return this.getQuotes(new String[]{instrument});
@@ -56,83 +110,123 @@ public class IQuoteService implements QuoteService {
 
     @Override
     public Map<String, Quote> getQuotes(String[] instruments) {
-        Map<String, Quote> quotes = new HashMap<>();
+        return this.getQuotes(instruments, false);
+    }
+
+    @Override
+    public Map<String, Quote> getQuotes(String[] instruments, boolean allowStale) {
         try {
-            if(!isCustomDataStreaming) {
-                TradingAccount tradingAccount = tradingAccountRepository.findTradingAccountByUserId(dataStreamingUser);
-                KiteConnect kiteConnect = kiteConnector.getKiteConnect(tradingAccount);
-                quotes = kiteConnect.getQuote(instruments);
-            } else {
-                quotes = this.fetchQuotesFromInternalTickFeedService(instruments);
+            return this.getQuotesAsync(instruments, Duration.ofMillis(tickWaitMillis), allowStale).join();
+        } catch (CompletionException completionException) {
+            if (completionException.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
             }
-        } catch (RequestTokenMissingException requestTokenMissingException) {
-            log.warn("Request token is missing for user: {}", dataStreamingUser);
-        } catch (KiteException kiteException) {
-            log.error("KiteException while fetching quotes using user {}: {}", dataStreamingUser, kiteException.getMessage());
-            log.info("Trying to fetch quotes from internal tick feed service as fallback.");
-            quotes = this.fetchQuotesFromInternalTickFeedService(instruments);
-        } catch (IOException ioException) {
-            log.error("IOException while fetching quotes using user {}: {}", dataStreamingUser, ioException.getMessage());
+            throw completionException;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Quote>> getQuotesAsync(String[] instruments) {
+        return this.getQuotesAsync(instruments, Duration.ofMillis(tickWaitMillis));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Quote>> getQuotesAsync(String[] instruments, Duration deadline) {
+        return this.getQuotesAsync(instruments, deadline, false);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Quote>> getQuotesAsync(String[] instruments, Duration deadline, boolean allowStale) {
+        if (isCustomDataStreaming) {
+            return this.fetchQuotesFromInternalTickFeedService(instruments, deadline, allowStale);
         }
-        return quotes;
+        // concurrent callers share rate limited kite calls, the fallback runs off the gateway thread
+        return kiteQuoteGateway.getQuotes(instruments).exceptionallyComposeAsync(e -> {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof RequestTokenMissingException) {
+                log.warn("Request token is missing for user: {}", dataStreamingUser);
+            } else if (cause instanceof KiteException kiteException) {
+                log.error("KiteException while fetching quotes using user {}: {}", dataStreamingUser, kiteException.getMessage());
+                log.info("Trying to fetch quotes from internal tick feed service as fallback.");
+                return this.fetchQuotesFromInternalTickFeedService(instruments, deadline, allowStale);
+            } else if (cause instanceof IOException ioException) {
+                log.error("IOException while fetching quotes using user {}: {}", dataStreamingUser, ioException.getMessage());
+            } else {
+                return CompletableFuture.failedFuture(cause);
+            }
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }, quoteExecutor);
     }
 
-    private Map<String, Quote> fetchQuotesFromInternalTickFeedService(String[] instruments) {
+    /**
+     * Serves the instruments that already stream from the latest ticks and subscribes the rest.
+     * The future completes once every subscribed instrument ticked or the deadline passed,
+     * whichever comes first, with the quotes known by then. Instruments whose last tick is stale,
+     * or restored from the snapshot and not confirmed by a live tick yet, wait for a fresh one
+     * too; when none arrives in time they are left out, or quoted from the old tick as a
+     * {@link StaleQuote} when the caller allows stale quotes.
+     */
+    private CompletableFuture<Map<String, Quote>> fetchQuotesFromInternalTickFeedService(String[] instruments, Duration deadline, boolean allowStale) {
         Map<String, Quote> quotes = new HashMap<>();
+        Map<String, CompletableFuture<PrimitiveTick>> pendingTicks = new HashMap<>();
+        Map<String, PrimitiveTick> staleTicks = new HashMap<>();
         Set<Long> instrumentsToSubscribe = new HashSet<>();
-        // First, check which instruments need subscription
+        String[] quotedInstruments = new String[instruments.length];
+        long[] instrumentTokens = new long[instruments.length];
+        int resolved = 0;
         for (String instrument : instruments) {
             String tradingSymbol = instrument.split(":")[1];
             String exchange = instrument.split(":")[0];
-            Optional<Instrument> instrumentOptional = instrumentRepository.findByTradingSymbolAndExchange(tradingSymbol, exchange);
+            Optional<Instrument> instrumentOptional = instrumentService.findByTradingSymbolAndExchange(tradingSymbol, exchange);
             if (instrumentOptional.isPresent()) {
-                Long instrumentToken = instrumentOptional.get().getInstrumentToken();
-                Tick tick = internalTickFeedService.getLatestTick(instrumentToken);
-                if (tick == null) {
-                    // No tick available, need to subscribe
-                    instrumentsToSubscribe.add(instrumentToken);
-                } else {
-                    // Tick is available, create quote directly
-                    Quote quote = new Quote();
-                    quote.instrumentToken = tick.getInstrumentToken();
-                    quote.lastPrice = tick.getLastTradedPrice();
-                    quotes.put(instrument, quote);
+                quotedInstruments[resolved] = instrument;
+                instrumentTokens[resolved++] = instrumentOptional.get().getInstrumentToken();
+            }
+        }
+        // all latest ticks in one read, then check which instruments need subscription
+        long readAt = System.currentTimeMillis();
+        PrimitiveTick[] ticks = internalTickFeedService.getLatestTicks(Arrays.copyOf(instrumentTokens, resolved));
+        for (int i = 0; i < resolved; i++) {
+            String instrument = quotedInstruments[i];
+            long instrumentToken = instrumentTokens[i];
+            PrimitiveTick tick = ticks[i];
+            // a tick restored from the pre restart snapshot is as untrusted as a stale one until a live tick confirms it
+            boolean restored = tick != null && internalTickFeedService.isRestored(instrumentToken);
+            if (tick == null || restored || kiteTickBus.isStale(instrumentToken)) {
+                if (tick != null) {
+                    // a silent token may just be illiquid, its last tick is the fallback for callers allowing stale quotes
+                    log.warn("Tick of instrument {} is {}, waiting for a fresh one", instrumentToken, restored ? "restored" : "stale");
+                    staleTicks.put(instrument, tick);
                 }
+                // No tick available, wait for one fed since the read, registered before subscribing
+                pendingTicks.put(instrument, internalTickFeedService.awaitTick(instrumentToken, readAt, deadline));
+                instrumentsToSubscribe.add(instrumentToken);
+            } else {
+                // Tick is available, create quote directly
+                quotes.put(instrument, tick.toQuote());
             }
         }
 
         // Only subscribe if there are instruments that need subscription
-        if (!instrumentsToSubscribe.isEmpty()) {
-            internalTickSubscriptionService.subscribeToKiteWebsocket(instrumentsToSubscribe);
-
-            //3 seconds sleep to allow websocket to connect and fetch latest ticks
-            try {
-                Thread.sleep(3000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("Thread interrupted while waiting for websocket connection: {}", e.getMessage());
-            }
-
-            // Now fetch ticks for the subscribed instruments
-            for (String instrument : instruments) {
-                if (quotes.containsKey(instrument)) {
-                    continue; // Already processed above
-                }
-                String tradingSymbol = instrument.split(":")[1];
-                String exchange = instrument.split(":")[0];
-                Optional<Instrument> instrumentOptional = instrumentRepository.findByTradingSymbolAndExchange(tradingSymbol, exchange);
-                if (instrumentOptional.isPresent()) {
-                    Long instrumentToken = instrumentOptional.get().getInstrumentToken();
-                    Tick tick = internalTickFeedService.getLatestTick(instrumentToken);
-                    if (tick != null) {
-                        Quote quote = new Quote();
-                        quote.instrumentToken = tick.getInstrumentToken();
-                        quote.lastPrice = tick.getLastTradedPrice();
-                        quotes.put(instrument, quote);
-                    }
-                }
-            }
+        if (instrumentsToSubscribe.isEmpty()) {
+            return CompletableFuture.completedFuture(quotes);
         }
-        return quotes;
+        internalTickSubscriptionService.subscribeToKiteWebsocket(instrumentsToSubscribe);
+        return CompletableFuture.allOf(pendingTicks.values().toArray(CompletableFuture[]::new))
+                .completeOnTimeout(null, deadline.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApplyAsync(ignored -> {
+                    pendingTicks.forEach((instrument, pendingTick) -> {
+                        PrimitiveTick tick = pendingTick.getNow(null);
+                        if (tick != null) {
+                            quotes.put(instrument, tick.toQuote());
+                        } else if (allowStale && staleTicks.containsKey(instrument)) {
+                            quotes.put(instrument, staleTicks.get(instrument).toQuote(new StaleQuote()));
+                        }
+                    });
+                    if (quotes.size() < instruments.length) {
+                        log.warn("Quoting {} of {} instruments, no tick within {} ms for the rest", quotes.size(), instruments.length, deadline.toMillis());
+                    }
+                    return quotes;
+                }, quoteExecutor);
     }
 }
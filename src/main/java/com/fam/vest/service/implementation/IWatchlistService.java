@@ -5,6 +5,7 @@ import com.fam.vest.dto.response.PositionDetails;
 import com.fam.vest.entity.*;
 import com.fam.vest.repository.*;
 import com.fam.vest.service.HoldingService;
+import com.fam.vest.service.InstrumentService;
 import com.fam.vest.service.PositionService;
 import com.fam.vest.service.QuoteService;
 import com.fam.vest.service.WatchlistService;
@@ -30,6 +31,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class IWatchlistService implements WatchlistService {
 
     private final InstrumentRepository instrumentRepository;
+    private final InstrumentService instrumentService;
     private final WatchlistRepository watchlistRepository;
     private final WatchlistInstrumentRepository watchlistInstrumentRepository;
     private final ApplicationUserRepository applicationUserRepository;
@@ -254,7 +256,7 @@ public class IWatchlistService implements WatchlistService {
                     if(isAlreadyPresent) {
                         return;
                     }
-                    Optional<Instrument> instrument = instrumentRepository.findByTradingSymbolAndExchange(tradingSymbolExchange.tradingSymbol, tradingSymbolExchange.exchange);
+                    Optional<Instrument> instrument = instrumentService.findByTradingSymbolAndExchange(tradingSymbolExchange.tradingSymbol, tradingSymbolExchange.exchange);
                     if (instrument.isPresent()) {
                         holdingsInstruments.add(instrument.get());
                     } else {
@@ -279,7 +281,7 @@ public class IWatchlistService implements WatchlistService {
                     if(isAlreadyPresent) {
                         return;
                     }
-                    Optional<Instrument> instrument = instrumentRepository.findByTradingSymbolAndExchange(tradingSymbolExchange.tradingSymbol, tradingSymbolExchange.exchange);
+                    Optional<Instrument> instrument = instrumentService.findByTradingSymbolAndExchange(tradingSymbolExchange.tradingSymbol, tradingSymbolExchange.exchange);
                     if (instrument.isPresent()) {
                         positionsInstruments.add(instrument.get());
                     } else {
@@ -4,26 +4,69 @@ import com.fam.vest.config.ClientSessionRegistry;
 import com.fam.vest.entity.ApplicationUser;
 import com.fam.vest.entity.TradingAccount;
 import com.fam.vest.pojo.OrderUpdate;
+import com.fam.vest.pojo.records.SessionFeedStatistics;
 import com.fam.vest.repository.ApplicationUserRepository;
 import com.fam.vest.service.TradingAccountService;
 import com.fam.vest.service.WebSocketFeedService;
 import com.zerodhatech.models.Tick;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
 public class IWebSocketFeedService implements WebSocketFeedService {
 
+    private static final long SWEEP_MILLIS = 1000L;
+    private static final String TICKS_DESTINATION = "/queue/ticks";
+
     private final ClientSessionRegistry registry;
     private final SimpMessagingTemplate template;
     private final TradingAccountService tradingAccountService;
     private final ApplicationUserRepository applicationUserRepository;
+    private final TickPayloadEncoder tickPayloadEncoder;
+    private final Map<String, SessionTickBuffer> sessionBuffers = new ConcurrentHashMap<>();
+    private final Set<String> compactSessions = ConcurrentHashMap.newKeySet();
+
+    // 250 ms flushes at 4 Hz, zero or less sends every batch as soon as it arrives
+    @Value("${fam.vest.app.websocket.tick.flush.millis:0}")
+    private long tickFlushMillis;
+
+    // cadence of sessions downgraded for being too slow to keep up with the normal feed
+    @Value("${fam.vest.app.websocket.slow.flush.millis:1000}")
+    private long slowFlushMillis;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private Counter sentCounter;
+    private Counter conflatedCounter;
+    private ScheduledExecutorService flushScheduler;
+    private volatile boolean conflating;
 
     @Autowired
     public IWebSocketFeedService(ClientSessionRegistry registry,
@@ -33,25 +76,209 @@ public class IWebSocketFeedService implements WebSocketFeedService {
         this.template = template;
         this.applicationUserRepository = applicationUserRepository;
         this.tradingAccountService = tradingAccountService;
+        this.tickPayloadEncoder = new TickPayloadEncoder(template.getMessageConverter());
+    }
+
+    @PostConstruct
+    public void init() {
+        if (null != this.meterRegistry) {
+            this.sentCounter = Counter.builder("websocket.ticks.sent")
+                    .description("Ticks sent to STOMP sessions")
+                    .register(this.meterRegistry);
+            this.conflatedCounter = Counter.builder("websocket.ticks.conflated")
+                    .description("Ticks replaced by a newer tick of the same instrument before a session was flushed")
+                    .register(this.meterRegistry);
+            Gauge.builder("websocket.tick.sessions", this.sessionBuffers, Map::size)
+                    .description("STOMP sessions with a tick buffer")
+                    .register(this.meterRegistry);
+        }
+        this.conflating = this.tickFlushMillis > 0L;
+        if (this.conflating) {
+            log.info("Flushing web socket ticks every {} ms per session", this.tickFlushMillis);
+        }
+        // without conflation the flush only sweeps the buffers of closed sessions
+        long flushMillis = this.conflating ? this.tickFlushMillis : SWEEP_MILLIS;
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "websocket-tick-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flushScheduler.scheduleAtFixedRate(() -> {
+            try {
+                this.flushSessions();
+            } catch (Exception e) {
+                log.error("Error while flushing web socket ticks: {}", e.getMessage(), e);
+            }
+        }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (null != this.flushScheduler) {
+            this.flushScheduler.shutdown();
+        }
     }
 
     @Override
     public void feedTicks(List<Tick> ticks) {
-        // Loop through each session
-        for (String sessionId : registry.getAllSessionIds()) {
-            String userName = registry.userNameForSession(sessionId);
-            Set<Long> instrumentTokens = registry.tokensForSessionId(sessionId);
-            // Filter ticks for this session's instrument tokens
-            List<Tick> userTicks = ticks.stream()
-                    .filter(tick -> instrumentTokens.contains(tick.getInstrumentToken()))
-                    .toList();
-            if (!userTicks.isEmpty()) {
-                log.debug("Feeding {} ticks to user: {}", userTicks.size(), userName);
-                template.convertAndSendToUser(userName, "/queue/ticks", userTicks);
+        // group the ticks by session through the token index, each tick only touches its subscribers
+        Map<String, List<Tick>> sessionTicks = new HashMap<>();
+        for (Tick tick : ticks) {
+            for (String sessionId : registry.sessionsForToken(tick.getInstrumentToken())) {
+                sessionTicks.computeIfAbsent(sessionId, k -> new ArrayList<>()).add(tick);
+            }
+        }
+        Map<Tick, byte[]> fragments = this.conflating ? null : this.tickPayloadEncoder.newBatch();
+        sessionTicks.forEach((sessionId, userTicks) -> {
+            SessionTickBuffer buffer = this.sessionBuffer(sessionId);
+            if (!this.conflating && !buffer.degraded) {
+                synchronized (buffer) {
+                    buffer.received += userTicks.size();
+                    this.send(buffer, userTicks, fragments);
+                }
+            } else {
+                long conflated = buffer.offer(userTicks);
+                if (conflated > 0L && null != this.conflatedCounter) {
+                    this.conflatedCounter.increment(conflated);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void feedSnapshot(String sessionId, List<Tick> ticks) {
+        if (ticks.isEmpty()) {
+            return;
+        }
+        SessionTickBuffer buffer = this.sessionBuffer(sessionId);
+        // goes through the buffer, an older pending tick of the same token cannot follow the snapshot
+        synchronized (buffer) {
+            long conflated = buffer.offer(ticks);
+            if (conflated > 0L && null != this.conflatedCounter) {
+                this.conflatedCounter.increment(conflated);
             }
+            this.send(buffer, buffer.drain(), this.tickPayloadEncoder.newBatch());
         }
     }
 
+    @Override
+    public void setTickEncoding(String sessionId, boolean compact) {
+        if (compact) {
+            this.compactSessions.add(sessionId);
+        } else {
+            this.compactSessions.remove(sessionId);
+        }
+        SessionTickBuffer buffer = this.sessionBuffers.get(sessionId);
+        if (null != buffer) {
+            buffer.setCompact(compact);
+        }
+        log.debug("Session {} receives ticks in {} encoding", sessionId, compact ? CompactTickEncoder.ENCODING : "json");
+    }
+
+    @Override
+    public void forgetTicks(String sessionId, Collection<Long> instrumentTokens) {
+        SessionTickBuffer buffer = this.sessionBuffers.get(sessionId);
+        if (null != buffer) {
+            buffer.forget(instrumentTokens);
+        }
+    }
+
+    @Override
+    public void setSessionDegraded(String sessionId, boolean degraded) {
+        SessionTickBuffer buffer = this.sessionBuffers.get(sessionId);
+        if (null == buffer || buffer.degraded == degraded) {
+            return;
+        }
+        buffer.degraded = degraded;
+        if (degraded) {
+            log.warn("Session {} is too slow, flushing its ticks every {} ms", sessionId, this.slowFlushMillis);
+        } else {
+            log.info("Session {} caught up, back to the normal tick cadence", sessionId);
+        }
+    }
+
+    @Override
+    public void closeSession(String sessionId) {
+        this.compactSessions.remove(sessionId);
+    }
+
+    @Override
+    public List<SessionFeedStatistics> getSessionFeedStatistics() {
+        List<SessionFeedStatistics> statistics = new ArrayList<>(this.sessionBuffers.size());
+        this.sessionBuffers.values().forEach(buffer -> statistics.add(buffer.statistics(registry.userNameForSession(buffer.sessionId))));
+        return statistics;
+    }
+
+    private SessionTickBuffer sessionBuffer(String sessionId) {
+        SessionTickBuffer buffer = this.sessionBuffers.get(sessionId);
+        if (null == buffer) {
+            buffer = this.sessionBuffers.computeIfAbsent(sessionId, key -> {
+                SessionTickBuffer created = new SessionTickBuffer(key);
+                created.setCompact(this.compactSessions.contains(key));
+                return created;
+            });
+        }
+        return buffer;
+    }
+
+    private void flushSessions() {
+        long now = System.currentTimeMillis();
+        Map<Tick, byte[]> fragments = this.tickPayloadEncoder.newBatch();
+        for (SessionTickBuffer buffer : this.sessionBuffers.values()) {
+            if (null == registry.userNameForSession(buffer.sessionId)) {
+                this.sessionBuffers.remove(buffer.sessionId);
+                SessionFeedStatistics statistics = buffer.statistics(null);
+                log.info("Web socket session {} closed after {} ticks received, {} sent and {} conflated",
+                        buffer.sessionId, statistics.receivedTicks(), statistics.sentTicks(), statistics.conflatedTicks());
+            } else if (!buffer.degraded || now >= buffer.nextFlushAt) {
+                // drained and sent under the session lock, frames of a session leave in order
+                synchronized (buffer) {
+                    if (buffer.degraded) {
+                        buffer.nextFlushAt = now + this.slowFlushMillis;
+                    }
+                    List<Tick> ticks = buffer.drain();
+                    if (!ticks.isEmpty()) {
+                        this.send(buffer, ticks, fragments);
+                    }
+                }
+            }
+        }
+    }
+
+    private void send(SessionTickBuffer buffer, List<Tick> ticks, Map<Tick, byte[]> fragments) {
+        String userName = registry.userNameForSession(buffer.sessionId);
+        if (null == userName) {
+            return;
+        }
+        log.debug("Feeding {} ticks to user: {} on session: {}", ticks.size(), userName, buffer.sessionId);
+        // pre-encoded payload addressed to the session, other sessions of the same user get their own buffer
+        byte[] payload = buffer.compact() ? buffer.encodeCompact(ticks) : this.tickPayloadEncoder.encode(ticks, fragments);
+        if (null == payload) {
+            return;
+        }
+        synchronized (buffer) {
+            template.send(this.userDestination(userName), MessageBuilder.createMessage(payload, this.sessionHeaders(buffer.sessionId)));
+            buffer.sent += ticks.size();
+            buffer.flushes++;
+        }
+        if (null != this.sentCounter) {
+            this.sentCounter.increment(ticks.size());
+        }
+    }
+
+    private String userDestination(String userName) {
+        String prefix = template.getUserDestinationPrefix();
+        return prefix + userName.replace("/", "%2F") + TICKS_DESTINATION;
+    }
+
+    private MessageHeaders sessionHeaders(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+
     @Override
     public void feedOrderUpdates(OrderUpdate orderUpdate) {
         Set<String> users = registry.getAllUserNames();
@@ -90,4 +317,71 @@ public class IWebSocketFeedService implements WebSocketFeedService {
         return shaFromKite.equals(shaFromMe);
     }
 
+    /**
+     * Latest pending tick of every instrument of one session, in first arrival order. A tick that
+     * arrives before the previous tick of its instrument was flushed replaces it in place.
+     */
+    private static final class SessionTickBuffer {
+
+        private final String sessionId;
+        private LinkedHashMap<Long, Tick> pending = new LinkedHashMap<>();
+        private long received;
+        private long sent;
+        private long conflated;
+        private long flushes;
+        // slow sessions are conflated and flushed no earlier than the next flush time
+        private volatile boolean degraded;
+        private long nextFlushAt;
+        // last values sent to a session that asked for the compact encoding, null for plain json
+        private CompactTickEncoder compactEncoder;
+
+        private SessionTickBuffer(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        private synchronized void setCompact(boolean compact) {
+            if (compact != (null != this.compactEncoder)) {
+                this.compactEncoder = compact ? new CompactTickEncoder() : null;
+            }
+        }
+
+        private synchronized boolean compact() {
+            return null != this.compactEncoder;
+        }
+
+        private synchronized byte[] encodeCompact(List<Tick> ticks) {
+            return null != this.compactEncoder ? this.compactEncoder.encode(ticks) : null;
+        }
+
+        private synchronized void forget(Collection<Long> instrumentTokens) {
+            if (null != this.compactEncoder) {
+                this.compactEncoder.forget(instrumentTokens);
+            }
+        }
+
+        private synchronized long offer(List<Tick> ticks) {
+            long replaced = 0L;
+            for (Tick tick : ticks) {
+                if (null != this.pending.put(tick.getInstrumentToken(), tick)) {
+                    replaced++;
+                }
+            }
+            this.received += ticks.size();
+            this.conflated += replaced;
+            return replaced;
+        }
+
+        private synchronized List<Tick> drain() {
+            if (this.pending.isEmpty()) {
+                return List.of();
+            }
+            List<Tick> ticks = new ArrayList<>(this.pending.values());
+            this.pending = new LinkedHashMap<>();
+            return ticks;
+        }
+
+        private synchronized SessionFeedStatistics statistics(String userName) {
+            return new SessionFeedStatistics(this.sessionId, userName, this.received, this.sent, this.conflated, this.pending.size(), this.flushes, this.degraded);
+        }
+    }
 }
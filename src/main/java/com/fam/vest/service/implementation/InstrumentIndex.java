@@ -0,0 +1,67 @@
+package com.fam.vest.service.implementation;
+
+import com.fam.vest.entity.Instrument;
+import com.fam.vest.util.ConcurrentLongObjectMap;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable snapshot of the instrument table keyed by {@code exchange:tradingSymbol} and by
+ * instrument token. A new index is built after every instrument reload and swapped in whole,
+ * readers never see a half built one.
+ */
+final class InstrumentIndex {
+
+    static final InstrumentIndex EMPTY = new InstrumentIndex(Map.of(), new ConcurrentLongObjectMap<>(), 0L);
+
+    private final Map<String, Instrument> bySymbol;
+    private final ConcurrentLongObjectMap<Instrument> byToken;
+    private final long builtAt;
+
+    private InstrumentIndex(Map<String, Instrument> bySymbol, ConcurrentLongObjectMap<Instrument> byToken, long builtAt) {
+        this.bySymbol = bySymbol;
+        this.byToken = byToken;
+        this.builtAt = builtAt;
+    }
+
+    static InstrumentIndex of(Collection<Instrument> instruments) {
+        Map<String, Instrument> bySymbol = new HashMap<>(instruments.size() * 2);
+        // only ever read once published, the map is not written after this loop
+        ConcurrentLongObjectMap<Instrument> byToken = new ConcurrentLongObjectMap<>(instruments.size());
+        for (Instrument instrument : instruments) {
+            bySymbol.put(key(instrument.getExchange(), instrument.getTradingSymbol()), instrument);
+            if (null != instrument.getInstrumentToken()) {
+                byToken.put(instrument.getInstrumentToken(), instrument);
+            }
+        }
+        return new InstrumentIndex(Collections.unmodifiableMap(bySymbol), byToken, System.currentTimeMillis());
+    }
+
+    static String key(String exchange, String tradingSymbol) {
+        return exchange + ":" + tradingSymbol;
+    }
+
+    Optional<Instrument> bySymbol(String exchange, String tradingSymbol) {
+        return Optional.ofNullable(this.bySymbol.get(key(exchange, tradingSymbol)));
+    }
+
+    Optional<Instrument> byToken(long instrumentToken) {
+        return Optional.ofNullable(this.byToken.get(instrumentToken));
+    }
+
+    boolean isEmpty() {
+        return this.bySymbol.isEmpty();
+    }
+
+    int size() {
+        return this.bySymbol.size();
+    }
+
+    long builtAt() {
+        return this.builtAt;
+    }
+}
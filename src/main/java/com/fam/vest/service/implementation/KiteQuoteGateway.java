@@ -0,0 +1,152 @@
+package com.fam.vest.service.implementation;
+
+import com.zerodhatech.kiteconnect.kitehttp.exceptions.KiteException;
+import com.zerodhatech.models.Quote;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Funnels quote requests to the rate limited kite REST quote endpoint. Requests arriving within
+ * the batch window are merged into one call of up to the batch size instruments, an instrument
+ * already queued or in flight is not asked for twice, and calls are paced by a token bucket.
+ * Every caller gets back only the instruments it asked for.
+ * <p>
+ * Calls are made one after the other on the gateway thread, which also waits for the bucket.
+ */
+@Slf4j
+final class KiteQuoteGateway {
+
+    @FunctionalInterface
+    interface QuoteFetcher {
+        Map<String, Quote> fetch(String[] instruments) throws KiteException, IOException;
+    }
+
+    private final QuoteFetcher fetcher;
+    private final long windowMillis;
+    private final int batchSize;
+    private final double permitsPerSecond;
+    private final double burst;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kite-quote-gateway");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // queued or in flight instruments with the future every caller of the instrument shares
+    private final Map<String, CompletableFuture<Quote>> pending = new HashMap<>();
+    private final LinkedHashSet<String> queued = new LinkedHashSet<>();
+    private boolean flushScheduled;
+    // token bucket, only touched by the gateway thread
+    private double permits;
+    private long refilledAt = System.nanoTime();
+
+    KiteQuoteGateway(QuoteFetcher fetcher, long windowMillis, int batchSize, double permitsPerSecond, int burst) {
+        this.fetcher = fetcher;
+        this.windowMillis = windowMillis;
+        this.batchSize = batchSize;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.permits = this.burst;
+    }
+
+    /**
+     * Quotes of the instruments, failing with the cause of the first kite call that failed for
+     * one of them.
+     */
+    CompletableFuture<Map<String, Quote>> getQuotes(String[] instruments) {
+        Map<String, CompletableFuture<Quote>> quotes = new LinkedHashMap<>();
+        synchronized (this) {
+            for (String instrument : instruments) {
+                quotes.computeIfAbsent(instrument, key -> this.pending.computeIfAbsent(key, queuedKey -> {
+                    this.queued.add(queuedKey);
+                    return new CompletableFuture<>();
+                }));
+            }
+            if (!this.queued.isEmpty() && !this.flushScheduled) {
+                this.flushScheduled = true;
+                this.scheduler.schedule(this::flush, this.windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        return CompletableFuture.allOf(quotes.values().toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            Map<String, Quote> slice = new HashMap<>();
+            quotes.forEach((instrument, quote) -> {
+                if (null != quote.join()) {
+                    slice.put(instrument, quote.join());
+                }
+            });
+            return slice;
+        });
+    }
+
+    void shutdown() {
+        this.scheduler.shutdown();
+    }
+
+    private void flush() {
+        while (true) {
+            List<String> batch;
+            synchronized (this) {
+                if (this.queued.isEmpty()) {
+                    this.flushScheduled = false;
+                    return;
+                }
+                batch = new ArrayList<>(Math.min(this.batchSize, this.queued.size()));
+                Iterator<String> iterator = this.queued.iterator();
+                while (iterator.hasNext() && batch.size() < this.batchSize) {
+                    batch.add(iterator.next());
+                    iterator.remove();
+                }
+            }
+            this.acquirePermit();
+            Map<String, Quote> quotes = null;
+            Throwable failure = null;
+            try {
+                quotes = this.fetcher.fetch(batch.toArray(String[]::new));
+                log.debug("Fetched kite quotes for {} instruments", batch.size());
+            } catch (KiteException | IOException | RuntimeException e) {
+                failure = e;
+            }
+            List<CompletableFuture<Quote>> completed = new ArrayList<>(batch.size());
+            synchronized (this) {
+                batch.forEach(instrument -> completed.add(this.pending.remove(instrument)));
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                if (null != failure) {
+                    completed.get(i).completeExceptionally(failure);
+                } else {
+                    completed.get(i).complete(null != quotes ? quotes.get(batch.get(i)) : null);
+                }
+            }
+        }
+    }
+
+    private void acquirePermit() {
+        while (true) {
+            long now = System.nanoTime();
+            this.permits = Math.min(this.burst, this.permits + (now - this.refilledAt) * this.permitsPerSecond / 1e9);
+            this.refilledAt = now;
+            if (this.permits >= 1.0) {
+                this.permits -= 1.0;
+                return;
+            }
+            long waitNanos = (long) Math.ceil((1.0 - this.permits) * 1e9 / this.permitsPerSecond);
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.fam.vest.service.implementation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zerodhatech.models.Tick;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the JSON array payload of a tick frame out of per tick fragments. A tick is serialized
+ * once per batch, however many sessions it goes to, and every session frame is then a copy of the
+ * cached fragments between brackets. The object mapper of the broker converter is reused so the
+ * payload is byte for byte what the messaging template would have produced.
+ */
+@Slf4j
+final class TickPayloadEncoder {
+
+    private static final byte OPEN = '[';
+    private static final byte SEPARATOR = ',';
+    private static final byte CLOSE = ']';
+
+    private final ObjectMapper objectMapper;
+
+    TickPayloadEncoder(MessageConverter messageConverter) {
+        this.objectMapper = objectMapperOf(messageConverter);
+    }
+
+    /**
+     * Fragments cache of one batch. Ticks are keyed by identity as the same decoded tick instance
+     * is shared by all the sessions it is fanned out to.
+     */
+    Map<Tick, byte[]> newBatch() {
+        return new IdentityHashMap<>();
+    }
+
+    byte[] encode(List<Tick> ticks, Map<Tick, byte[]> fragments) {
+        byte[][] parts = new byte[ticks.size()][];
+        int length = 2;
+        int count = 0;
+        for (Tick tick : ticks) {
+            byte[] fragment = fragments.get(tick);
+            if (null == fragment) {
+                fragment = this.serialize(tick);
+                fragments.put(tick, fragment);
+            }
+            if (fragment.length == 0) {
+                continue;
+            }
+            length += fragment.length + (count > 0 ? 1 : 0);
+            parts[count++] = fragment;
+        }
+        byte[] payload = new byte[length];
+        int position = 0;
+        payload[position++] = OPEN;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                payload[position++] = SEPARATOR;
+            }
+            System.arraycopy(parts[i], 0, payload, position, parts[i].length);
+            position += parts[i].length;
+        }
+        payload[position] = CLOSE;
+        return payload;
+    }
+
+    private byte[] serialize(Tick tick) {
+        try {
+            return this.objectMapper.writeValueAsBytes(tick);
+        } catch (JsonProcessingException e) {
+            log.error("Error while serializing tick of instrument {}: {}", tick.getInstrumentToken(), e.getMessage());
+            return new byte[0];
+        }
+    }
+
+    private static ObjectMapper objectMapperOf(MessageConverter messageConverter) {
+        if (messageConverter instanceof MappingJackson2MessageConverter jacksonConverter) {
+            return jacksonConverter.getObjectMapper();
+        }
+        if (messageConverter instanceof CompositeMessageConverter compositeConverter) {
+            for (MessageConverter converter : compositeConverter.getConverters()) {
+                if (converter instanceof MappingJackson2MessageConverter jacksonConverter) {
+                    return jacksonConverter.getObjectMapper();
+                }
+            }
+        }
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+}
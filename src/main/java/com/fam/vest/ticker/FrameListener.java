@@ -0,0 +1,10 @@
+package com.fam.vest.ticker;
+
+/**
+ * Receives every raw binary frame of the kite socket before it is decoded. Called on the socket
+ * reader thread, so implementations must return quickly and must not modify the frame.
+ */
+public interface FrameListener {
+
+    void onFrame(byte[] frame, long receivedAt);
+}
@@ -0,0 +1,174 @@
+package com.fam.vest.ticker;
+
+import com.zerodhatech.models.Tick;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Decodes kite binary frames by reading every field at its absolute offset from a single
+ * big-endian view over the frame, without copying packets or fields into intermediate arrays.
+ * Packets are decoded into a reusable {@link PrimitiveTick} flyweight, so a decoder instance
+ * must only be used by one thread at a time.
+ */
+public class KiteTickDecoder {
+
+    public static final String MODE_FULL = "full";
+    public static final String MODE_QUOTE = "quote";
+    public static final String MODE_LTP = "ltp";
+
+    public static final int LTP_PACKET_LENGTH = 8;
+    public static final int INDEX_QUOTE_PACKET_LENGTH = 28;
+    public static final int INDEX_FULL_PACKET_LENGTH = 32;
+    public static final int QUOTE_PACKET_LENGTH = 44;
+    public static final int FULL_PACKET_LENGTH = 184;
+
+    private static final int SEGMENT_CDS = 3;
+    private static final int SEGMENT_BCD = 6;
+    private static final int SEGMENT_INDICES = 9;
+    private static final int DEPTH_OFFSET = 64;
+
+    private final PrimitiveTick flyweight = new PrimitiveTick();
+    private boolean marketDepthRequired = true;
+
+    public void setMarketDepthRequired(boolean marketDepthRequired) {
+        this.marketDepthRequired = marketDepthRequired;
+    }
+
+    public ArrayList<Tick> decode(byte[] frame) {
+        ArrayList<Tick> ticks = new ArrayList<>();
+        this.decode(frame, tick -> ticks.add(tick.toTick()));
+        return ticks;
+    }
+
+    /**
+     * Decodes every packet of the frame into the flyweight and hands it to the listener.
+     * Returns the number of ticks delivered.
+     */
+    public int decode(byte[] frame, TickListener listener) {
+        return frame == null ? 0 : this.decode(frame, frame.length, listener);
+    }
+
+    /**
+     * Decodes the frame held in the first {@code length} bytes of a possibly larger, reused buffer.
+     */
+    public int decode(byte[] frame, int length, TickListener listener) {
+        if (frame == null || length < 2) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        int noOfPackets = buffer.getShort(0);
+        int position = 2;
+        int delivered = 0;
+        for (int i = 0; i < noOfPackets && position + 2 <= length; i++) {
+            int packetLength = buffer.getShort(position);
+            int offset = position + 2;
+            if (packetLength < 0 || offset + packetLength > length) {
+                break;
+            }
+            if (this.decodePacket(buffer, offset, packetLength, this.flyweight)) {
+                listener.onTick(this.flyweight);
+                delivered++;
+            }
+            position = offset + packetLength;
+        }
+        return delivered;
+    }
+
+    private boolean decodePacket(ByteBuffer buffer, int offset, int length, PrimitiveTick tick) {
+        int instrumentToken = buffer.getInt(offset);
+        int segment = instrumentToken & 255;
+        int divisor = priceDivisor(segment);
+        switch (length) {
+            case LTP_PACKET_LENGTH:
+                tick.clear();
+                tick.mode = PrimitiveTick.MODE_LTP;
+                this.decodeHeader(buffer, offset, instrumentToken, segment, divisor, tick);
+                return true;
+            case INDEX_QUOTE_PACKET_LENGTH:
+            case INDEX_FULL_PACKET_LENGTH:
+                tick.clear();
+                this.decodeIndex(buffer, offset, length, instrumentToken, segment, tick);
+                return true;
+            case QUOTE_PACKET_LENGTH:
+                tick.clear();
+                tick.mode = PrimitiveTick.MODE_QUOTE;
+                this.decodeQuote(buffer, offset, instrumentToken, segment, divisor, tick);
+                return true;
+            case FULL_PACKET_LENGTH:
+                tick.clear();
+                tick.mode = PrimitiveTick.MODE_FULL;
+                this.decodeQuote(buffer, offset, instrumentToken, segment, divisor, tick);
+                this.decodeFull(buffer, offset, divisor, tick);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void decodeHeader(ByteBuffer buffer, int offset, int instrumentToken, int segment, int divisor, PrimitiveTick tick) {
+        tick.instrumentToken = instrumentToken;
+        tick.tradable = segment != SEGMENT_INDICES;
+        tick.lastTradedPrice = price(buffer, offset + 4, divisor);
+    }
+
+    private void decodeIndex(ByteBuffer buffer, int offset, int length, int instrumentToken, int segment, PrimitiveTick tick) {
+        int divisor = 100;
+        tick.mode = PrimitiveTick.MODE_QUOTE;
+        this.decodeHeader(buffer, offset, instrumentToken, segment, divisor, tick);
+        tick.highPrice = price(buffer, offset + 8, divisor);
+        tick.lowPrice = price(buffer, offset + 12, divisor);
+        tick.openPrice = price(buffer, offset + 16, divisor);
+        tick.closePrice = price(buffer, offset + 20, divisor);
+        tick.change = change(tick.lastTradedPrice, tick.closePrice);
+        if (length > INDEX_QUOTE_PACKET_LENGTH) {
+            tick.mode = PrimitiveTick.MODE_FULL;
+            tick.tickTimestamp = epochMillis(buffer, offset + 28);
+        }
+    }
+
+    private void decodeQuote(ByteBuffer buffer, int offset, int instrumentToken, int segment, int divisor, PrimitiveTick tick) {
+        this.decodeHeader(buffer, offset, instrumentToken, segment, divisor, tick);
+        tick.lastTradedQuantity = buffer.getInt(offset + 8);
+        tick.averageTradePrice = price(buffer, offset + 12, divisor);
+        tick.volumeTradedToday = buffer.getInt(offset + 16);
+        tick.totalBuyQuantity = buffer.getInt(offset + 20);
+        tick.totalSellQuantity = buffer.getInt(offset + 24);
+        tick.openPrice = price(buffer, offset + 28, divisor);
+        tick.highPrice = price(buffer, offset + 32, divisor);
+        tick.lowPrice = price(buffer, offset + 36, divisor);
+        tick.closePrice = price(buffer, offset + 40, divisor);
+        tick.change = change(tick.lastTradedPrice, tick.closePrice);
+    }
+
+    private void decodeFull(ByteBuffer buffer, int offset, int divisor, PrimitiveTick tick) {
+        tick.lastTradedTime = epochMillis(buffer, offset + 44);
+        tick.oi = buffer.getInt(offset + 48);
+        tick.openInterestDayHigh = buffer.getInt(offset + 52);
+        tick.openInterestDayLow = buffer.getInt(offset + 56);
+        tick.tickTimestamp = epochMillis(buffer, offset + 60);
+        if (this.marketDepthRequired) {
+            // keep the raw depth block, it is decoded only if somebody reads it
+            System.arraycopy(buffer.array(), offset + DEPTH_OFFSET, tick.depthBytes, 0, PrimitiveTick.DEPTH_LENGTH);
+            tick.depthDivisor = divisor;
+            tick.depthAvailable = true;
+        }
+    }
+
+    public static int priceDivisor(int segment) {
+        return segment == SEGMENT_CDS ? 10000000 : (segment == SEGMENT_BCD ? 10000 : 100);
+    }
+
+    static double price(ByteBuffer buffer, int index, int divisor) {
+        return (double) buffer.getInt(index) / (double) divisor;
+    }
+
+    static double change(double lastTradedPrice, double closePrice) {
+        return closePrice != 0.0 ? (lastTradedPrice - closePrice) * 100.0 / closePrice : 0.0;
+    }
+
+    static long epochMillis(ByteBuffer buffer, int index) {
+        long epochMillis = (long) buffer.getInt(index) * 1000L;
+        return epochMillis > 0L ? epochMillis : 0L;
+    }
+}
@@ -0,0 +1,62 @@
+package com.fam.vest.ticker;
+
+import com.fam.vest.util.ConcurrentLongObjectMap;
+import com.zerodhatech.models.Tick;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Latest tick of every instrument streamed to the front end. The cache is kept apart from the
+ * kite connections and never cleared when they drop, so a new subscription gets a price right
+ * away, also for instruments that tick rarely or no longer tick after the close.
+ */
+@Component
+public class LastValueTickCache {
+
+    // each slot is updated in place by the tick consumer thread
+    private final ConcurrentLongObjectMap<PrimitiveTick> lastTicks = new ConcurrentLongObjectMap<>();
+
+    public void put(PrimitiveTick tick) {
+        PrimitiveTick slot = this.lastTicks.get(tick.getInstrumentToken());
+        if (null == slot) {
+            slot = this.lastTicks.computeIfAbsent(tick.getInstrumentToken(), token -> new PrimitiveTick());
+        }
+        synchronized (slot) {
+            slot.copyFrom(tick);
+        }
+    }
+
+    public PrimitiveTick get(long instrumentToken) {
+        PrimitiveTick slot = this.lastTicks.get(instrumentToken);
+        if (null == slot) {
+            return null;
+        }
+        PrimitiveTick snapshot = new PrimitiveTick();
+        synchronized (slot) {
+            snapshot.copyFrom(slot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Kite ticks of the cached instruments among the given tokens, unknown tokens are left out.
+     */
+    public List<Tick> snapshot(Collection<Long> instrumentTokens) {
+        List<Tick> ticks = new ArrayList<>(instrumentTokens.size());
+        for (Long instrumentToken : instrumentTokens) {
+            // the tick is built from a private copy, its depth is decoded lazily from the copied bytes
+            PrimitiveTick tick = this.get(instrumentToken);
+            if (null != tick) {
+                ticks.add(tick.toTick());
+            }
+        }
+        return ticks;
+    }
+
+    public int size() {
+        return this.lastTicks.size();
+    }
+}
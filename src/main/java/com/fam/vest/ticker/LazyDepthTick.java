@@ -0,0 +1,65 @@
+package com.fam.vest.ticker;
+
+import com.zerodhatech.models.Depth;
+import com.zerodhatech.models.Tick;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tick that retains a copy of the raw depth block and only builds the depth map the first time
+ * {@link #getMarketDepth()} is called. One tick is serialized by several session threads at once,
+ * so decoding and reading the depth hold the tick's lock.
+ */
+class LazyDepthTick extends Tick {
+
+    private byte[] depthBytes;
+    private final int depthDivisor;
+    private boolean depthDecoded;
+
+    LazyDepthTick(byte[] depthBytes, int depthDivisor) {
+        this.depthBytes = depthBytes.clone();
+        this.depthDivisor = depthDivisor;
+    }
+
+    @Override
+    public synchronized Map<String, ArrayList<Depth>> getMarketDepth() {
+        if (!this.depthDecoded) {
+            super.setMarketDepth(decodeDepth(this.depthBytes, this.depthDivisor));
+            this.depthBytes = null;
+            this.depthDecoded = true;
+        }
+        return super.getMarketDepth();
+    }
+
+    @Override
+    public synchronized void setMarketDepth(Map<String, ArrayList<Depth>> marketDepth) {
+        super.setMarketDepth(marketDepth);
+        this.depthBytes = null;
+        this.depthDecoded = true;
+    }
+
+    static Map<String, ArrayList<Depth>> decodeDepth(byte[] depthBytes, int depthDivisor) {
+        ByteBuffer buffer = ByteBuffer.wrap(depthBytes);
+        ArrayList<Depth> buy = new ArrayList<>(PrimitiveTick.DEPTH_LEVELS / 2);
+        ArrayList<Depth> sell = new ArrayList<>(PrimitiveTick.DEPTH_LEVELS / 2);
+        for (int level = 0; level < PrimitiveTick.DEPTH_LEVELS; level++) {
+            int entry = level * PrimitiveTick.DEPTH_ENTRY_LENGTH;
+            Depth depth = new Depth();
+            depth.setQuantity(buffer.getInt(entry));
+            depth.setPrice(KiteTickDecoder.price(buffer, entry + 4, depthDivisor));
+            depth.setOrders(buffer.getShort(entry + 8));
+            if (level < PrimitiveTick.DEPTH_LEVELS / 2) {
+                buy.add(depth);
+            } else {
+                sell.add(depth);
+            }
+        }
+        Map<String, ArrayList<Depth>> depthMap = new HashMap<>();
+        depthMap.put("buy", buy);
+        depthMap.put("sell", sell);
+        return depthMap;
+    }
+}
@@ -0,0 +1,309 @@
+package com.fam.vest.ticker;
+
+import com.zerodhatech.models.Depth;
+import com.zerodhatech.models.MarketDepth;
+import com.zerodhatech.models.OHLC;
+import com.zerodhatech.models.Quote;
+import com.zerodhatech.models.Tick;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Mutable, primitive-only representation of a tick. Instances are reused as flyweights by the
+ * decoder and as per-instrument slots by the tick caches, so nothing is allocated per tick;
+ * {@link #toTick()} builds the kite model only where a consumer needs it. Market depth is kept
+ * as the raw packet bytes and decoded on read.
+ */
+@Getter
+public class PrimitiveTick {
+
+    public static final byte MODE_NONE = 0;
+    public static final byte MODE_LTP = 1;
+    public static final byte MODE_QUOTE = 2;
+    public static final byte MODE_FULL = 3;
+
+    public static final int DEPTH_LEVELS = 10;
+    public static final int DEPTH_ENTRY_LENGTH = 12;
+    public static final int DEPTH_LENGTH = DEPTH_LEVELS * DEPTH_ENTRY_LENGTH;
+    // longest encoding written by writeTo, the depth block is only written when available
+    public static final int MAXIMUM_WIRE_LENGTH = 8 + 3 + 16 * 8 + 4 + DEPTH_LENGTH;
+
+    long instrumentToken;
+    byte mode;
+    boolean tradable;
+    double lastTradedPrice;
+    double lastTradedQuantity;
+    double averageTradePrice;
+    long volumeTradedToday;
+    double totalBuyQuantity;
+    double totalSellQuantity;
+    double openPrice;
+    double highPrice;
+    double lowPrice;
+    double closePrice;
+    double change;
+    long lastTradedTime;
+    double oi;
+    double openInterestDayHigh;
+    double openInterestDayLow;
+    long tickTimestamp;
+    boolean depthAvailable;
+    // raw depth block of the full packet, only decoded when someone reads it
+    @Getter(AccessLevel.NONE)
+    final byte[] depthBytes = new byte[DEPTH_LENGTH];
+    @Getter(AccessLevel.NONE)
+    int depthDivisor;
+
+    public void clear() {
+        this.instrumentToken = 0L;
+        this.mode = MODE_NONE;
+        this.tradable = false;
+        this.lastTradedPrice = 0.0;
+        this.lastTradedQuantity = 0.0;
+        this.averageTradePrice = 0.0;
+        this.volumeTradedToday = 0L;
+        this.totalBuyQuantity = 0.0;
+        this.totalSellQuantity = 0.0;
+        this.openPrice = 0.0;
+        this.highPrice = 0.0;
+        this.lowPrice = 0.0;
+        this.closePrice = 0.0;
+        this.change = 0.0;
+        this.lastTradedTime = 0L;
+        this.oi = 0.0;
+        this.openInterestDayHigh = 0.0;
+        this.openInterestDayLow = 0.0;
+        this.tickTimestamp = 0L;
+        this.depthAvailable = false;
+    }
+
+    public void copyFrom(PrimitiveTick source) {
+        this.instrumentToken = source.instrumentToken;
+        this.mode = source.mode;
+        this.tradable = source.tradable;
+        this.lastTradedPrice = source.lastTradedPrice;
+        this.lastTradedQuantity = source.lastTradedQuantity;
+        this.averageTradePrice = source.averageTradePrice;
+        this.volumeTradedToday = source.volumeTradedToday;
+        this.totalBuyQuantity = source.totalBuyQuantity;
+        this.totalSellQuantity = source.totalSellQuantity;
+        this.openPrice = source.openPrice;
+        this.highPrice = source.highPrice;
+        this.lowPrice = source.lowPrice;
+        this.closePrice = source.closePrice;
+        this.change = source.change;
+        this.lastTradedTime = source.lastTradedTime;
+        this.oi = source.oi;
+        this.openInterestDayHigh = source.openInterestDayHigh;
+        this.openInterestDayLow = source.openInterestDayLow;
+        this.tickTimestamp = source.tickTimestamp;
+        this.depthAvailable = source.depthAvailable;
+        if (source.depthAvailable) {
+            System.arraycopy(source.depthBytes, 0, this.depthBytes, 0, DEPTH_LENGTH);
+            this.depthDivisor = source.depthDivisor;
+        }
+    }
+
+    public void copyFrom(Tick source, boolean withMarketDepth) {
+        this.clear();
+        this.instrumentToken = source.getInstrumentToken();
+        this.mode = modeOf(source.getMode());
+        this.tradable = source.isTradable();
+        this.lastTradedPrice = source.getLastTradedPrice();
+        this.lastTradedQuantity = source.getLastTradedQuantity();
+        this.averageTradePrice = source.getAverageTradePrice();
+        this.volumeTradedToday = source.getVolumeTradedToday();
+        this.totalBuyQuantity = source.getTotalBuyQuantity();
+        this.totalSellQuantity = source.getTotalSellQuantity();
+        this.openPrice = source.getOpenPrice();
+        this.highPrice = source.getHighPrice();
+        this.lowPrice = source.getLowPrice();
+        this.closePrice = source.getClosePrice();
+        this.change = source.getChange();
+        this.lastTradedTime = null != source.getLastTradedTime() ? source.getLastTradedTime().getTime() : 0L;
+        this.oi = source.getOi();
+        this.openInterestDayHigh = source.getOpenInterestDayHigh();
+        this.openInterestDayLow = source.getOpenInterestDayLow();
+        this.tickTimestamp = null != source.getTickTimestamp() ? source.getTickTimestamp().getTime() : 0L;
+        Map<String, ArrayList<Depth>> marketDepth = withMarketDepth ? source.getMarketDepth() : null;
+        if (null != marketDepth && null != marketDepth.get("buy") && null != marketDepth.get("sell")) {
+            this.depthDivisor = KiteTickDecoder.priceDivisor((int) this.instrumentToken & 255);
+            this.encodeDepth(marketDepth.get("buy"), 0);
+            this.encodeDepth(marketDepth.get("sell"), DEPTH_LEVELS / 2);
+            this.depthAvailable = true;
+        }
+    }
+
+    private void encodeDepth(ArrayList<Depth> depths, int firstLevel) {
+        ByteBuffer buffer = ByteBuffer.wrap(this.depthBytes);
+        for (int level = 0; level < DEPTH_LEVELS / 2; level++) {
+            Depth depth = level < depths.size() ? depths.get(level) : null;
+            int entry = (firstLevel + level) * DEPTH_ENTRY_LENGTH;
+            buffer.putInt(entry, null != depth ? depth.getQuantity() : 0);
+            buffer.putInt(entry + 4, null != depth ? (int) Math.round(depth.getPrice() * this.depthDivisor) : 0);
+            buffer.putShort(entry + 8, null != depth ? (short) depth.getOrders() : 0);
+            buffer.putShort(entry + 10, (short) 0);
+        }
+    }
+
+    public int getDepthQuantity(int level) {
+        return this.depthAvailable ? ByteBuffer.wrap(this.depthBytes).getInt(level * DEPTH_ENTRY_LENGTH) : 0;
+    }
+
+    public double getDepthPrice(int level) {
+        return this.depthAvailable ? KiteTickDecoder.price(ByteBuffer.wrap(this.depthBytes), level * DEPTH_ENTRY_LENGTH + 4, this.depthDivisor) : 0.0;
+    }
+
+    public int getDepthOrders(int level) {
+        return this.depthAvailable ? ByteBuffer.wrap(this.depthBytes).getShort(level * DEPTH_ENTRY_LENGTH + 8) : 0;
+    }
+
+    public Tick toTick() {
+        Tick tick = this.depthAvailable ? new LazyDepthTick(this.depthBytes, this.depthDivisor) : new Tick();
+        tick.setMode(modeName(this.mode));
+        tick.setTradable(this.tradable);
+        tick.setInstrumentToken(this.instrumentToken);
+        tick.setLastTradedPrice(this.lastTradedPrice);
+        tick.setLastTradedQuantity(this.lastTradedQuantity);
+        tick.setAverageTradePrice(this.averageTradePrice);
+        tick.setVolumeTradedToday(this.volumeTradedToday);
+        tick.setTotalBuyQuantity(this.totalBuyQuantity);
+        tick.setTotalSellQuantity(this.totalSellQuantity);
+        tick.setOpenPrice(this.openPrice);
+        tick.setHighPrice(this.highPrice);
+        tick.setLowPrice(this.lowPrice);
+        tick.setClosePrice(this.closePrice);
+        tick.setNetPriceChangeFromClosingPrice(this.change);
+        tick.setLastTradedTime(this.lastTradedTime > 0L ? new Date(this.lastTradedTime) : null);
+        tick.setOi(this.oi);
+        tick.setOpenInterestDayHigh(this.openInterestDayHigh);
+        tick.setOpenInterestDayLow(this.openInterestDayLow);
+        tick.setTickTimestamp(this.tickTimestamp > 0L ? new Date(this.tickTimestamp) : null);
+        return tick;
+    }
+
+    /**
+     * Builds the REST quote model from the tick. OHLC, volume and OI need a quote or full mode
+     * tick and the depth a full mode one; {@code change} is the percentage change from the close,
+     * the same as on ticks. Circuit limits are not streamed and stay zero.
+     */
+    public Quote toQuote() {
+        return this.toQuote(new Quote());
+    }
+
+    /**
+     * Fills the given quote, or a subclass of it, the same as {@link #toQuote()}.
+     */
+    public <Q extends Quote> Q toQuote(Q quote) {
+        quote.instrumentToken = this.instrumentToken;
+        quote.lastPrice = this.lastTradedPrice;
+        quote.lastTradedQuantity = this.lastTradedQuantity;
+        quote.averagePrice = this.averageTradePrice;
+        quote.volumeTradedToday = this.volumeTradedToday;
+        quote.buyQuantity = this.totalBuyQuantity;
+        quote.sellQuantity = this.totalSellQuantity;
+        quote.change = this.change;
+        quote.oi = this.oi;
+        quote.oiDayHigh = this.openInterestDayHigh;
+        quote.oiDayLow = this.openInterestDayLow;
+        quote.lastTradedTime = this.lastTradedTime > 0L ? new Date(this.lastTradedTime) : null;
+        quote.timestamp = this.tickTimestamp > 0L ? new Date(this.tickTimestamp) : null;
+        OHLC ohlc = new OHLC();
+        ohlc.open = this.openPrice;
+        ohlc.high = this.highPrice;
+        ohlc.low = this.lowPrice;
+        ohlc.close = this.closePrice;
+        quote.ohlc = ohlc;
+        if (this.depthAvailable) {
+            Map<String, ArrayList<Depth>> depth = LazyDepthTick.decodeDepth(this.depthBytes, this.depthDivisor);
+            MarketDepth marketDepth = new MarketDepth();
+            marketDepth.buy = depth.get("buy");
+            marketDepth.sell = depth.get("sell");
+            quote.depth = marketDepth;
+        }
+        return quote;
+    }
+
+    /**
+     * Writes the tick in a fixed binary layout for relaying it to another node, read back with
+     * {@link #readFrom(ByteBuffer)}.
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putLong(this.instrumentToken);
+        buffer.put(this.mode);
+        buffer.put((byte) (this.tradable ? 1 : 0));
+        buffer.put((byte) (this.depthAvailable ? 1 : 0));
+        buffer.putDouble(this.lastTradedPrice);
+        buffer.putDouble(this.lastTradedQuantity);
+        buffer.putDouble(this.averageTradePrice);
+        buffer.putLong(this.volumeTradedToday);
+        buffer.putDouble(this.totalBuyQuantity);
+        buffer.putDouble(this.totalSellQuantity);
+        buffer.putDouble(this.openPrice);
+        buffer.putDouble(this.highPrice);
+        buffer.putDouble(this.lowPrice);
+        buffer.putDouble(this.closePrice);
+        buffer.putDouble(this.change);
+        buffer.putLong(this.lastTradedTime);
+        buffer.putDouble(this.oi);
+        buffer.putDouble(this.openInterestDayHigh);
+        buffer.putDouble(this.openInterestDayLow);
+        buffer.putLong(this.tickTimestamp);
+        if (this.depthAvailable) {
+            buffer.putInt(this.depthDivisor);
+            buffer.put(this.depthBytes);
+        }
+    }
+
+    public void readFrom(ByteBuffer buffer) {
+        this.instrumentToken = buffer.getLong();
+        this.mode = buffer.get();
+        this.tradable = buffer.get() != 0;
+        this.depthAvailable = buffer.get() != 0;
+        this.lastTradedPrice = buffer.getDouble();
+        this.lastTradedQuantity = buffer.getDouble();
+        this.averageTradePrice = buffer.getDouble();
+        this.volumeTradedToday = buffer.getLong();
+        this.totalBuyQuantity = buffer.getDouble();
+        this.totalSellQuantity = buffer.getDouble();
+        this.openPrice = buffer.getDouble();
+        this.highPrice = buffer.getDouble();
+        this.lowPrice = buffer.getDouble();
+        this.closePrice = buffer.getDouble();
+        this.change = buffer.getDouble();
+        this.lastTradedTime = buffer.getLong();
+        this.oi = buffer.getDouble();
+        this.openInterestDayHigh = buffer.getDouble();
+        this.openInterestDayLow = buffer.getDouble();
+        this.tickTimestamp = buffer.getLong();
+        if (this.depthAvailable) {
+            this.depthDivisor = buffer.getInt();
+            buffer.get(this.depthBytes);
+        }
+    }
+
+    public static byte modeOf(String mode) {
+        if (KiteTickDecoder.MODE_FULL.equals(mode)) {
+            return MODE_FULL;
+        } else if (KiteTickDecoder.MODE_QUOTE.equals(mode)) {
+            return MODE_QUOTE;
+        } else if (KiteTickDecoder.MODE_LTP.equals(mode)) {
+            return MODE_LTP;
+        }
+        return MODE_NONE;
+    }
+
+    public static String modeName(byte mode) {
+        return switch (mode) {
+            case MODE_FULL -> KiteTickDecoder.MODE_FULL;
+            case MODE_QUOTE -> KiteTickDecoder.MODE_QUOTE;
+            case MODE_LTP -> KiteTickDecoder.MODE_LTP;
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,15 @@
+package com.fam.vest.ticker;
+
+/**
+ * Consumer of the shared upstream tick stream. Only ticks of the tokens the consumer declared an
+ * interest in are delivered to it, always on the upstream reader thread.
+ */
+public interface TickConsumer extends TickListener {
+
+    String consumerName();
+
+    // consumers that never read market depth let the decoder skip the depth block
+    default boolean needsMarketDepth() {
+        return true;
+    }
+}
@@ -0,0 +1,153 @@
+package com.fam.vest.ticker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+/**
+ * Appends the ticks of one instrument and day to its history file. Ticks are buffered per column
+ * until a block is full; the footer index is written when the file is closed. Not thread safe.
+ */
+class TickHistoryFileWriter {
+
+    private final long instrumentToken;
+    private final LocalDate date;
+    private final int priceDivisor;
+    private final FileChannel channel;
+    private final TickHistoryIndex index;
+    private final long[][] columns = new long[TickHistoryFormat.COLUMNS][TickHistoryFormat.BLOCK_SIZE];
+    private int count;
+    private long position;
+    private long lastTimestamp;
+    private long blockStartedAt;
+    private boolean hasLastTick;
+    private long lastTradedPrice;
+    private long lastVolume;
+    private long lastOi;
+
+    TickHistoryFileWriter(Path file, long instrumentToken, LocalDate date) throws IOException {
+        this.instrumentToken = instrumentToken;
+        this.date = date;
+        this.priceDivisor = KiteTickDecoder.priceDivisor((int) instrumentToken & 255);
+        Files.createDirectories(file.getParent());
+        if (!Files.exists(file)) {
+            writeHeader(file, instrumentToken, date, this.priceDivisor);
+        }
+        if (Files.size(file) > TickHistoryFormat.HEADER_LENGTH) {
+            // continue the file of the same day after a restart, dropping its footer or a partial block
+            try (TickHistoryReader reader = new TickHistoryReader(file)) {
+                this.index = reader.index();
+                this.position = reader.dataEnd();
+                this.lastTimestamp = this.index.blocks() > 0 ? this.index.lastTimestamp(this.index.blocks() - 1) : 0L;
+            }
+        } else {
+            this.index = new TickHistoryIndex();
+            this.position = TickHistoryFormat.HEADER_LENGTH;
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.channel.truncate(this.position);
+    }
+
+    LocalDate getDate() {
+        return this.date;
+    }
+
+    long getInstrumentToken() {
+        return this.instrumentToken;
+    }
+
+    /**
+     * Appends the tick unless nothing changed since the last one, which happens when the same
+     * instrument streams on more than one connection. Returns whether a block was written.
+     */
+    boolean append(PrimitiveTick tick, long timestamp, ByteBuffer scratch) throws IOException {
+        long lastTradedPrice = Math.round(tick.lastTradedPrice * this.priceDivisor);
+        long volume = tick.volumeTradedToday;
+        long oi = (long) tick.oi;
+        if (this.hasLastTick && this.lastTradedPrice == lastTradedPrice && this.lastVolume == volume && this.lastOi == oi) {
+            return false;
+        }
+        this.hasLastTick = true;
+        this.lastTradedPrice = lastTradedPrice;
+        this.lastVolume = volume;
+        this.lastOi = oi;
+        // timestamps only move forward so that the block index stays sorted
+        this.lastTimestamp = Math.max(timestamp, this.lastTimestamp);
+        if (this.count == 0) {
+            this.blockStartedAt = System.currentTimeMillis();
+        }
+        int row = this.count++;
+        this.columns[TickHistoryFormat.COLUMN_TIMESTAMP][row] = this.lastTimestamp;
+        this.columns[TickHistoryFormat.COLUMN_LAST_TRADED_PRICE][row] = lastTradedPrice;
+        this.columns[TickHistoryFormat.COLUMN_LAST_TRADED_QUANTITY][row] = (long) tick.lastTradedQuantity;
+        this.columns[TickHistoryFormat.COLUMN_AVERAGE_TRADE_PRICE][row] = Math.round(tick.averageTradePrice * this.priceDivisor);
+        this.columns[TickHistoryFormat.COLUMN_VOLUME][row] = volume;
+        this.columns[TickHistoryFormat.COLUMN_TOTAL_BUY_QUANTITY][row] = (long) tick.totalBuyQuantity;
+        this.columns[TickHistoryFormat.COLUMN_TOTAL_SELL_QUANTITY][row] = (long) tick.totalSellQuantity;
+        this.columns[TickHistoryFormat.COLUMN_OI][row] = oi;
+        if (this.count == TickHistoryFormat.BLOCK_SIZE) {
+            this.flush(scratch);
+            return true;
+        }
+        return false;
+    }
+
+    boolean isPendingSince(long cutoff) {
+        return this.count > 0 && this.blockStartedAt <= cutoff;
+    }
+
+    void flush(ByteBuffer scratch) throws IOException {
+        if (this.count == 0) {
+            return;
+        }
+        scratch.clear();
+        scratch.putInt(0);
+        TickHistoryFormat.putVarLong(scratch, this.count);
+        for (long[] column : this.columns) {
+            long previous = 0;
+            for (int i = 0; i < this.count; i++) {
+                TickHistoryFormat.putVarLong(scratch, TickHistoryFormat.zigZag(column[i] - previous));
+                previous = column[i];
+            }
+        }
+        scratch.putInt(0, scratch.position() - 4);
+        scratch.flip();
+        this.index.add(this.position, this.columns[TickHistoryFormat.COLUMN_TIMESTAMP][0],
+                this.columns[TickHistoryFormat.COLUMN_TIMESTAMP][this.count - 1], this.count);
+        this.position += this.write(scratch, this.position);
+        this.count = 0;
+    }
+
+    void close(ByteBuffer scratch) throws IOException {
+        try {
+            this.flush(scratch);
+            ByteBuffer footer = ByteBuffer.allocate(this.index.footerLength());
+            this.index.writeFooter(footer, this.position);
+            this.write(footer.flip(), this.position);
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    private int write(ByteBuffer buffer, long at) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += this.channel.write(buffer, at + written);
+        }
+        return written;
+    }
+
+    private static void writeHeader(Path file, long instrumentToken, LocalDate date, int priceDivisor) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(TickHistoryFormat.HEADER_LENGTH);
+        header.putInt(TickHistoryFormat.MAGIC);
+        header.put(TickHistoryFormat.VERSION);
+        header.putLong(instrumentToken);
+        header.putInt((int) date.toEpochDay());
+        header.putInt(priceDivisor);
+        Files.write(file, header.array());
+    }
+}
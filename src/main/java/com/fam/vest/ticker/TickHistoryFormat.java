@@ -0,0 +1,74 @@
+package com.fam.vest.ticker;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+/**
+ * Layout of the per-instrument, per-day tick history files.
+ * <p>
+ * A file is a header {@code [int magic][byte version][long instrumentToken][int epochDay][int priceDivisor]}
+ * followed by blocks {@code [int byteLength][varint count][column]...}. Each column holds the
+ * zig-zag varint deltas of one field for all ticks of the block, prices as integers scaled by the
+ * price divisor of the segment. A closed file ends with a footer of
+ * {@code [long blockOffset][long firstTimestamp][long lastTimestamp][int count]} entries and a
+ * trailer {@code [int entries][long footerOffset][int magic]}; a file without one is recovered by
+ * walking the blocks.
+ */
+public final class TickHistoryFormat {
+
+    public static final int MAGIC = 0x46565448;
+    public static final byte VERSION = 1;
+    public static final int HEADER_LENGTH = 21;
+    public static final int INDEX_ENTRY_LENGTH = 28;
+    public static final int TRAILER_LENGTH = 16;
+    public static final String FILE_SUFFIX = ".ticks";
+
+    static final int BLOCK_SIZE = 256;
+    static final int COLUMN_TIMESTAMP = 0;
+    static final int COLUMN_LAST_TRADED_PRICE = 1;
+    static final int COLUMN_LAST_TRADED_QUANTITY = 2;
+    static final int COLUMN_AVERAGE_TRADE_PRICE = 3;
+    static final int COLUMN_VOLUME = 4;
+    static final int COLUMN_TOTAL_BUY_QUANTITY = 5;
+    static final int COLUMN_TOTAL_SELL_QUANTITY = 6;
+    static final int COLUMN_OI = 7;
+    static final int COLUMNS = 8;
+    // count plus every column at the widest varint
+    static final int MAX_BLOCK_LENGTH = 4 + 5 + BLOCK_SIZE * COLUMNS * 10;
+
+    private TickHistoryFormat() {
+    }
+
+    public static Path historyFile(Path directory, long instrumentToken, LocalDate date) {
+        return directory.resolve(date.toString()).resolve(instrumentToken + FILE_SUFFIX);
+    }
+
+    static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = buffer.get();
+            value |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        return value;
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,90 @@
+package com.fam.vest.ticker;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Block index of a tick history file, kept in primitive arrays and written as the file footer.
+ */
+class TickHistoryIndex {
+
+    private long[] blockOffsets = new long[16];
+    private long[] firstTimestamps = new long[16];
+    private long[] lastTimestamps = new long[16];
+    private int[] counts = new int[16];
+    private int blocks;
+    private long ticks;
+
+    void add(long blockOffset, long firstTimestamp, long lastTimestamp, int count) {
+        if (this.blocks == this.blockOffsets.length) {
+            int capacity = this.blocks * 2;
+            this.blockOffsets = Arrays.copyOf(this.blockOffsets, capacity);
+            this.firstTimestamps = Arrays.copyOf(this.firstTimestamps, capacity);
+            this.lastTimestamps = Arrays.copyOf(this.lastTimestamps, capacity);
+            this.counts = Arrays.copyOf(this.counts, capacity);
+        }
+        this.blockOffsets[this.blocks] = blockOffset;
+        this.firstTimestamps[this.blocks] = firstTimestamp;
+        this.lastTimestamps[this.blocks] = lastTimestamp;
+        this.counts[this.blocks] = count;
+        this.blocks++;
+        this.ticks += count;
+    }
+
+    int blocks() {
+        return this.blocks;
+    }
+
+    long ticks() {
+        return this.ticks;
+    }
+
+    long blockOffset(int block) {
+        return this.blockOffsets[block];
+    }
+
+    long lastTimestamp(int block) {
+        return this.lastTimestamps[block];
+    }
+
+    /**
+     * First block that may hold ticks at or after the timestamp, or the block count if none does.
+     */
+    int firstBlockFrom(long timestamp) {
+        int low = 0;
+        int high = this.blocks;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.lastTimestamps[middle] < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    int footerLength() {
+        return this.blocks * TickHistoryFormat.INDEX_ENTRY_LENGTH + TickHistoryFormat.TRAILER_LENGTH;
+    }
+
+    void writeFooter(ByteBuffer buffer, long footerOffset) {
+        for (int block = 0; block < this.blocks; block++) {
+            buffer.putLong(this.blockOffsets[block]);
+            buffer.putLong(this.firstTimestamps[block]);
+            buffer.putLong(this.lastTimestamps[block]);
+            buffer.putInt(this.counts[block]);
+        }
+        buffer.putInt(this.blocks);
+        buffer.putLong(footerOffset);
+        buffer.putInt(TickHistoryFormat.MAGIC);
+    }
+
+    static TickHistoryIndex readFooter(ByteBuffer buffer, int entries) {
+        TickHistoryIndex index = new TickHistoryIndex();
+        for (int block = 0; block < entries; block++) {
+            index.add(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getInt());
+        }
+        return index;
+    }
+}
@@ -0,0 +1,184 @@
+package com.fam.vest.ticker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+/**
+ * Streaming reader of a tick history file. Only one block is decoded at a time and ticks are
+ * filled into a caller supplied {@link PrimitiveTick}, so scanning a day allocates nothing per tick.
+ */
+public class TickHistoryReader implements AutoCloseable {
+
+    private static final int SEGMENT_INDICES = 9;
+
+    private final FileChannel channel;
+    private final long instrumentToken;
+    private final LocalDate date;
+    private final int priceDivisor;
+    private final TickHistoryIndex index;
+    private final long dataEnd;
+    private final ByteBuffer blockBuffer = ByteBuffer.allocate(TickHistoryFormat.MAX_BLOCK_LENGTH);
+    private final long[][] columns = new long[TickHistoryFormat.COLUMNS][TickHistoryFormat.BLOCK_SIZE];
+    private int nextBlock;
+    private int blockCount;
+    private int blockPosition;
+
+    public TickHistoryReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = this.read(0, TickHistoryFormat.HEADER_LENGTH);
+            if (header.remaining() < TickHistoryFormat.HEADER_LENGTH || header.getInt() != TickHistoryFormat.MAGIC
+                    || header.get() != TickHistoryFormat.VERSION) {
+                throw new IOException("Not a tick history file: " + file);
+            }
+            this.instrumentToken = header.getLong();
+            this.date = LocalDate.ofEpochDay(header.getInt());
+            this.priceDivisor = header.getInt();
+            long footerOffset = this.footerOffset();
+            if (footerOffset > 0) {
+                int entries = (int) ((this.channel.size() - TickHistoryFormat.TRAILER_LENGTH - footerOffset) / TickHistoryFormat.INDEX_ENTRY_LENGTH);
+                this.index = TickHistoryIndex.readFooter(this.read(footerOffset, entries * TickHistoryFormat.INDEX_ENTRY_LENGTH), entries);
+                this.dataEnd = footerOffset;
+            } else {
+                // not closed cleanly, rebuild the index from the complete blocks
+                this.index = new TickHistoryIndex();
+                this.dataEnd = this.scanBlocks();
+            }
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    public long getInstrumentToken() {
+        return this.instrumentToken;
+    }
+
+    public LocalDate getDate() {
+        return this.date;
+    }
+
+    public long getTickCount() {
+        return this.index.ticks();
+    }
+
+    /**
+     * Positions the reader on the first tick at or after the timestamp.
+     */
+    public void seek(long timestamp) throws IOException {
+        this.nextBlock = this.index.firstBlockFrom(timestamp);
+        this.blockCount = 0;
+        this.blockPosition = 0;
+        if (this.nextBlock < this.index.blocks()) {
+            this.loadBlock(this.nextBlock++);
+            while (this.blockPosition < this.blockCount
+                    && this.columns[TickHistoryFormat.COLUMN_TIMESTAMP][this.blockPosition] < timestamp) {
+                this.blockPosition++;
+            }
+        }
+    }
+
+    public boolean next(PrimitiveTick tick) throws IOException {
+        while (this.blockPosition >= this.blockCount) {
+            if (this.nextBlock >= this.index.blocks()) {
+                return false;
+            }
+            this.loadBlock(this.nextBlock++);
+        }
+        int position = this.blockPosition++;
+        double divisor = this.priceDivisor;
+        tick.clear();
+        tick.instrumentToken = this.instrumentToken;
+        tick.tradable = (this.instrumentToken & 255) != SEGMENT_INDICES;
+        tick.tickTimestamp = this.columns[TickHistoryFormat.COLUMN_TIMESTAMP][position];
+        tick.lastTradedPrice = this.columns[TickHistoryFormat.COLUMN_LAST_TRADED_PRICE][position] / divisor;
+        tick.lastTradedQuantity = this.columns[TickHistoryFormat.COLUMN_LAST_TRADED_QUANTITY][position];
+        tick.averageTradePrice = this.columns[TickHistoryFormat.COLUMN_AVERAGE_TRADE_PRICE][position] / divisor;
+        tick.volumeTradedToday = this.columns[TickHistoryFormat.COLUMN_VOLUME][position];
+        tick.totalBuyQuantity = this.columns[TickHistoryFormat.COLUMN_TOTAL_BUY_QUANTITY][position];
+        tick.totalSellQuantity = this.columns[TickHistoryFormat.COLUMN_TOTAL_SELL_QUANTITY][position];
+        tick.oi = this.columns[TickHistoryFormat.COLUMN_OI][position];
+        tick.mode = tick.volumeTradedToday != 0 || tick.oi != 0 ? PrimitiveTick.MODE_QUOTE : PrimitiveTick.MODE_LTP;
+        return true;
+    }
+
+    TickHistoryIndex index() {
+        return this.index;
+    }
+
+    long dataEnd() {
+        return this.dataEnd;
+    }
+
+    private void loadBlock(int block) throws IOException {
+        long offset = this.index.blockOffset(block);
+        int length = this.read(offset, 4).getInt();
+        this.blockCount = decodeBlock(this.read(offset + 4, length), this.columns);
+        this.blockPosition = 0;
+    }
+
+    static int decodeBlock(ByteBuffer block, long[][] columns) {
+        int count = (int) TickHistoryFormat.getVarLong(block);
+        if (count > TickHistoryFormat.BLOCK_SIZE) {
+            throw new IllegalStateException("Corrupt tick history block with " + count + " ticks");
+        }
+        for (long[] column : columns) {
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                value += TickHistoryFormat.unZigZag(TickHistoryFormat.getVarLong(block));
+                column[i] = value;
+            }
+        }
+        return count;
+    }
+
+    private long footerOffset() throws IOException {
+        long size = this.channel.size();
+        if (size < TickHistoryFormat.HEADER_LENGTH + TickHistoryFormat.TRAILER_LENGTH) {
+            return -1;
+        }
+        ByteBuffer trailer = this.read(size - TickHistoryFormat.TRAILER_LENGTH, TickHistoryFormat.TRAILER_LENGTH);
+        int entries = trailer.getInt();
+        long footerOffset = trailer.getLong();
+        boolean valid = trailer.getInt() == TickHistoryFormat.MAGIC && footerOffset >= TickHistoryFormat.HEADER_LENGTH
+                && footerOffset + (long) entries * TickHistoryFormat.INDEX_ENTRY_LENGTH + TickHistoryFormat.TRAILER_LENGTH == size;
+        return valid ? footerOffset : -1;
+    }
+
+    private long scanBlocks() throws IOException {
+        long size = this.channel.size();
+        long offset = TickHistoryFormat.HEADER_LENGTH;
+        while (offset + 4 <= size) {
+            int length = this.read(offset, 4).getInt();
+            if (length <= 0 || length > TickHistoryFormat.MAX_BLOCK_LENGTH || offset + 4 + length > size) {
+                break;
+            }
+            int count = decodeBlock(this.read(offset + 4, length), this.columns);
+            if (count > 0) {
+                long[] timestamps = this.columns[TickHistoryFormat.COLUMN_TIMESTAMP];
+                this.index.add(offset, timestamps[0], timestamps[count - 1], count);
+            }
+            offset += 4 + length;
+        }
+        return offset;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = length <= this.blockBuffer.capacity() ? this.blockBuffer.clear().limit(length) : ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
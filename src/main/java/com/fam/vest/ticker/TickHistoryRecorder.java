@@ -0,0 +1,178 @@
+package com.fam.vest.ticker;
+
+import com.fam.vest.util.ConcurrentLongObjectMap;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background consumer of the raw kite frames that keeps the compact per-instrument tick history
+ * described in {@link TickHistoryFormat}. Frames are queued without copying and decoded on the
+ * writer thread, so the socket reader thread only pays for the queue offer.
+ */
+@Slf4j
+@Component
+public class TickHistoryRecorder implements FrameListener {
+
+    private record Frame(byte[] frame, long receivedAt) {
+    }
+
+    @Value("${fam.vest.app.tick.history.enabled:false}")
+    private boolean enabled;
+
+    @Value("${fam.vest.app.tick.history.directory:history}")
+    private String directory;
+
+    @Value("${fam.vest.app.tick.history.queue.capacity:65536}")
+    private int queueCapacity;
+
+    @Value("${fam.vest.app.tick.history.flush.interval.seconds:60}")
+    private int flushIntervalSeconds;
+
+    private final KiteTickDecoder decoder = new KiteTickDecoder();
+    private final ConcurrentLongObjectMap<TickHistoryFileWriter> writers = new ConcurrentLongObjectMap<>();
+    private final ByteBuffer scratch = ByteBuffer.allocate(TickHistoryFormat.MAX_BLOCK_LENGTH);
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private BlockingQueue<Frame> queue;
+    private Thread writer;
+    private volatile boolean running;
+    private long receivedAt;
+
+    @PostConstruct
+    public void init() {
+        if (!this.enabled) {
+            return;
+        }
+        log.info("Recording tick history to {}", this.directory);
+        this.decoder.setMarketDepthRequired(false);
+        this.queue = new ArrayBlockingQueue<>(this.queueCapacity);
+        this.running = true;
+        this.writer = new Thread(this::drain, "tick-history-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public Path getDirectory() {
+        return Paths.get(this.directory);
+    }
+
+    public long getDroppedFrames() {
+        return this.droppedFrames.get();
+    }
+
+    @Override
+    public void onFrame(byte[] frame, long receivedAt) {
+        if (!this.running || !this.queue.offer(new Frame(frame, receivedAt))) {
+            this.droppedFrames.incrementAndGet();
+        }
+    }
+
+    private void drain() {
+        long lastFlushCheck = System.currentTimeMillis();
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                Frame frame = this.queue.poll(1, TimeUnit.SECONDS);
+                if (null != frame) {
+                    this.receivedAt = frame.receivedAt();
+                    this.decoder.decode(frame.frame(), this::record);
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastFlushCheck >= 1000L) {
+                    this.flushStaleBlocks(now - TimeUnit.SECONDS.toMillis(this.flushIntervalSeconds));
+                    lastFlushCheck = now;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Error while recording tick history: {}", e.getMessage(), e);
+            }
+        }
+        this.closeWriters();
+    }
+
+    private void record(PrimitiveTick tick) {
+        long timestamp = tick.tickTimestamp > 0L ? tick.tickTimestamp : this.receivedAt;
+        LocalDate date = LocalDate.ofInstant(Instant.ofEpochMilli(timestamp), TickJournal.MARKET_ZONE);
+        try {
+            TickHistoryFileWriter fileWriter = this.writers.get(tick.instrumentToken);
+            if (null != fileWriter && !fileWriter.getDate().equals(date)) {
+                this.writers.remove(tick.instrumentToken);
+                fileWriter.close(this.scratch);
+                fileWriter = null;
+            }
+            if (null == fileWriter) {
+                Path file = TickHistoryFormat.historyFile(this.getDirectory(), tick.instrumentToken, date);
+                fileWriter = new TickHistoryFileWriter(file, tick.instrumentToken, date);
+                this.writers.put(tick.instrumentToken, fileWriter);
+            }
+            fileWriter.append(tick, timestamp, this.scratch);
+        } catch (IOException e) {
+            log.error("Error while writing tick history of instrument {}: {}", tick.instrumentToken, e.getMessage());
+        }
+    }
+
+    // partial blocks are written after a while so that a crash loses at most the flush interval
+    private void flushStaleBlocks(long cutoff) {
+        LocalDate today = LocalDate.now(TickJournal.MARKET_ZONE);
+        this.writers.forEach((token, fileWriter) -> {
+            if (fileWriter.getDate().isBefore(today)) {
+                // instruments that stopped streaming get their file of the previous day closed
+                this.writers.remove(token);
+                try {
+                    fileWriter.close(this.scratch);
+                } catch (IOException e) {
+                    log.error("Error while closing tick history of instrument {}: {}", token, e.getMessage());
+                }
+            } else if (fileWriter.isPendingSince(cutoff)) {
+                try {
+                    fileWriter.flush(this.scratch);
+                } catch (IOException e) {
+                    log.error("Error while flushing tick history of instrument {}: {}", token, e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void closeWriters() {
+        this.writers.forEach((token, fileWriter) -> {
+            try {
+                fileWriter.close(this.scratch);
+            } catch (IOException e) {
+                log.error("Error while closing tick history of instrument {}: {}", token, e.getMessage());
+            }
+        });
+        this.writers.clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!this.running) {
+            return;
+        }
+        this.running = false;
+        try {
+            this.writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Tick history recorder stopped. Frames dropped: {}", this.droppedFrames.get());
+    }
+}
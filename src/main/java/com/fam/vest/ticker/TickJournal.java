@@ -0,0 +1,171 @@
+package com.fam.vest.ticker;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only capture of raw kite frames into one memory-mapped journal file per day. Frames are
+ * handed over through a bounded queue and written by a background thread; when the queue is full
+ * the frame is dropped and counted, so the socket reader thread never waits on the disk.
+ * <p>
+ * A journal is a {@link #MAGIC} header followed by records of
+ * {@code [int frameLength][long receivedAtMillis][frame bytes]}. The length is written last, so
+ * a reader stops cleanly at the first zero length, which also marks the end of the data.
+ */
+@Slf4j
+public class TickJournal implements FrameListener, AutoCloseable {
+
+    public static final long MAGIC = 0x46564A524E4C3031L;
+    public static final int HEADER_LENGTH = 8;
+    public static final int RECORD_HEADER_LENGTH = 12;
+    public static final String FILE_SUFFIX = ".journal";
+    static final ZoneId MARKET_ZONE = ZoneId.of("Asia/Kolkata");
+    static final long MAPPED_REGION_SIZE = 64L * 1024 * 1024;
+
+    private record Frame(byte[] frame, long receivedAt) {
+    }
+
+    private final Path directory;
+    private final String name;
+    private final BlockingQueue<Frame> queue;
+    private final Thread writer;
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong writtenFrames = new AtomicLong();
+    private volatile boolean running = true;
+
+    private LocalDate journalDate;
+    private FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+
+    public TickJournal(Path directory, String name, int queueCapacity) {
+        this.directory = directory;
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::drain, "tick-journal-" + name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void onFrame(byte[] frame, long receivedAt) {
+        if (!this.running || !this.queue.offer(new Frame(frame, receivedAt))) {
+            this.droppedFrames.incrementAndGet();
+        }
+    }
+
+    public long getDroppedFrames() {
+        return this.droppedFrames.get();
+    }
+
+    public long getWrittenFrames() {
+        return this.writtenFrames.get();
+    }
+
+    public static Path journalFile(Path directory, String name, LocalDate date) {
+        return directory.resolve(name + "-" + date + FILE_SUFFIX);
+    }
+
+    private void drain() {
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                Frame frame = this.queue.poll(1, TimeUnit.SECONDS);
+                if (null != frame) {
+                    this.append(frame);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Error while writing frame to tick journal {}: {}", this.name, e.getMessage(), e);
+            }
+        }
+        this.closeFile();
+    }
+
+    private void append(Frame frame) throws IOException {
+        LocalDate date = LocalDate.ofInstant(Instant.ofEpochMilli(frame.receivedAt()), MARKET_ZONE);
+        if (!date.equals(this.journalDate)) {
+            this.closeFile();
+            this.openFile(date);
+        }
+        int length = frame.frame().length;
+        long recordLength = RECORD_HEADER_LENGTH + length;
+        // keep room for the zero length that terminates the journal
+        this.ensureMapped(this.position, recordLength + 4);
+        int offset = (int) (this.position - this.regionStart);
+        this.region.putLong(offset + 4, frame.receivedAt());
+        this.region.put(offset + RECORD_HEADER_LENGTH, frame.frame());
+        this.region.putInt(offset, length);
+        this.position += recordLength;
+        this.writtenFrames.incrementAndGet();
+    }
+
+    private void openFile(LocalDate date) throws IOException {
+        Files.createDirectories(this.directory);
+        Path file = journalFile(this.directory, this.name, date);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.journalDate = date;
+        this.region = null;
+        if (this.channel.size() >= HEADER_LENGTH) {
+            // continue an existing journal of the same day after a restart
+            this.position = TickJournalReader.endOfData(this.channel);
+            log.info("Appending to existing tick journal {} at position {}", file, this.position);
+        } else {
+            this.ensureMapped(0, HEADER_LENGTH + 4);
+            this.region.putLong(0, MAGIC);
+            this.position = HEADER_LENGTH;
+            log.info("Created tick journal {}", file);
+        }
+    }
+
+    private void ensureMapped(long start, long length) throws IOException {
+        if (null != this.region && start >= this.regionStart && start + length <= this.regionStart + this.region.capacity()) {
+            return;
+        }
+        this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(MAPPED_REGION_SIZE, length));
+        this.regionStart = start;
+    }
+
+    private void closeFile() {
+        if (null == this.channel) {
+            return;
+        }
+        try {
+            if (null != this.region) {
+                this.region.force();
+            }
+            this.channel.close();
+        } catch (IOException e) {
+            log.error("Error while closing tick journal {}: {}", this.name, e.getMessage(), e);
+        }
+        this.channel = null;
+        this.region = null;
+        this.journalDate = null;
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        try {
+            this.writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Tick journal {} closed. Frames written: {}, dropped: {}", this.name, this.writtenFrames.get(), this.droppedFrames.get());
+    }
+}
@@ -0,0 +1,111 @@
+package com.fam.vest.ticker;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sequential reader over a {@link TickJournal} file. The file is mapped in windows, so journals
+ * larger than 2 GB of a busy day can be read as well.
+ */
+public class TickJournalReader implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position = TickJournal.HEADER_LENGTH;
+    private byte[] frame;
+    private long receivedAt;
+
+    public TickJournalReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = this.channel.size();
+        if (this.size < TickJournal.HEADER_LENGTH || this.readLong(0) != TickJournal.MAGIC) {
+            this.channel.close();
+            throw new IOException("Not a tick journal: " + file);
+        }
+    }
+
+    /**
+     * Moves to the next recorded frame, returns false at the end of the journal.
+     */
+    public boolean next() throws IOException {
+        if (this.position + TickJournal.RECORD_HEADER_LENGTH > this.size) {
+            return false;
+        }
+        int length = this.readInt(this.position);
+        if (length <= 0 || this.position + TickJournal.RECORD_HEADER_LENGTH + length > this.size) {
+            return false;
+        }
+        this.receivedAt = this.readLong(this.position + 4);
+        this.frame = new byte[length];
+        this.map(this.position + TickJournal.RECORD_HEADER_LENGTH, length);
+        this.region.get((int) (this.position + TickJournal.RECORD_HEADER_LENGTH - this.regionStart), this.frame);
+        this.position += TickJournal.RECORD_HEADER_LENGTH + length;
+        return true;
+    }
+
+    public byte[] getFrame() {
+        return this.frame;
+    }
+
+    public long getReceivedAt() {
+        return this.receivedAt;
+    }
+
+    public long getPosition() {
+        return this.position;
+    }
+
+    static long endOfData(FileChannel channel) throws IOException {
+        TickJournalReader reader = new TickJournalReader(channel);
+        while (reader.skip()) {
+            // walk the records until the terminating zero length
+        }
+        return reader.position;
+    }
+
+    private TickJournalReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    private boolean skip() throws IOException {
+        if (this.position + TickJournal.RECORD_HEADER_LENGTH > this.size) {
+            return false;
+        }
+        int length = this.readInt(this.position);
+        if (length <= 0 || this.position + TickJournal.RECORD_HEADER_LENGTH + length > this.size) {
+            return false;
+        }
+        this.position += TickJournal.RECORD_HEADER_LENGTH + length;
+        return true;
+    }
+
+    private int readInt(long index) throws IOException {
+        this.map(index, 4);
+        return this.region.getInt((int) (index - this.regionStart));
+    }
+
+    private long readLong(long index) throws IOException {
+        this.map(index, 8);
+        return this.region.getLong((int) (index - this.regionStart));
+    }
+
+    private void map(long start, long length) throws IOException {
+        if (null != this.region && start >= this.regionStart && start + length <= this.regionStart + this.region.capacity()) {
+            return;
+        }
+        long windowLength = Math.min(Math.max(TickJournal.MAPPED_REGION_SIZE, length), this.size - start);
+        this.region = this.channel.map(FileChannel.MapMode.READ_ONLY, start, windowLength);
+        this.regionStart = start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
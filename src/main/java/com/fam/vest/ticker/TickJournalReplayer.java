@@ -0,0 +1,38 @@
+package com.fam.vest.ticker;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Pushes the frames of a {@link TickJournal} file to a listener, either at the recorded pace
+ * scaled by a speed factor or, with a speed of zero or less, as fast as possible.
+ */
+@Slf4j
+public class TickJournalReplayer {
+
+    public long replay(Path file, double speed, FrameListener listener) throws IOException, InterruptedException {
+        long frames = 0;
+        long firstReceivedAt = 0L;
+        long startedAt = System.nanoTime();
+        try (TickJournalReader reader = new TickJournalReader(file)) {
+            while (reader.next()) {
+                if (frames == 0) {
+                    firstReceivedAt = reader.getReceivedAt();
+                }
+                if (speed > 0) {
+                    long dueNanos = (long) ((reader.getReceivedAt() - firstReceivedAt) * 1_000_000L / speed);
+                    long waitNanos = dueNanos - (System.nanoTime() - startedAt);
+                    if (waitNanos > 0) {
+                        Thread.sleep(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+                    }
+                }
+                listener.onFrame(reader.getFrame(), reader.getReceivedAt());
+                frames++;
+            }
+        }
+        log.info("Replayed {} frames from tick journal {} at speed {} in {} ms", frames, file, speed, (System.nanoTime() - startedAt) / 1_000_000L);
+        return frames;
+    }
+}
@@ -0,0 +1,13 @@
+package com.fam.vest.ticker;
+
+/**
+ * Receives decoded ticks. The tick passed to {@link #onTick(PrimitiveTick)} is a flyweight that is
+ * only valid for the duration of the call; copy it if it needs to outlive the callback.
+ */
+public interface TickListener {
+
+    void onTick(PrimitiveTick tick);
+
+    default void onTickBatchEnd() {
+    }
+}
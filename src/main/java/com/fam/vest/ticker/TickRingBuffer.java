@@ -0,0 +1,305 @@
+package com.fam.vest.ticker;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands raw kite frames from the web socket reader to the tick handlers through a ring of
+ * preallocated slots. The reader only copies the frame into the next slot and publishes its
+ * sequence; every handler runs on its own thread behind its own sequence, so a slow handler
+ * delays nobody but itself. When the slowest handler is a whole ring behind, the overflow policy
+ * either drops the new frame or overwrites the oldest one, in which case the lagging handler
+ * skips ahead to the frames still in the ring.
+ */
+@Slf4j
+public class TickRingBuffer implements FrameListener, MeterBinder, AutoCloseable {
+
+    public enum WaitStrategy {
+        // lowest latency, burns a core per handler
+        BUSY_SPIN,
+        YIELDING,
+        SLEEPING,
+        // parks on a condition the reader signals, cheapest on an idle market
+        BLOCKING
+    }
+
+    public enum OverflowPolicy {
+        // the new frame is lost, handlers see every frame they were not lapped on
+        DROP,
+        // the oldest frame is overwritten and handlers that lag skip to the newest frames
+        CONFLATE
+    }
+
+    public interface FrameHandler {
+        void onFrame(byte[] frame, int length, long receivedAt);
+    }
+
+    private static final int INITIAL_SLOT_CAPACITY = 4096;
+    private static final int SPIN_TRIES = 100;
+    private static final long SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long WRITING = Long.MIN_VALUE;
+
+    private final String name;
+    private final Slot[] slots;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong cursor = new AtomicLong(-1L);
+    private final List<HandlerThread> handlers = new ArrayList<>();
+    private final LongAdder dropped = new LongAdder();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private final AtomicInteger blockedHandlers = new AtomicInteger();
+    private volatile boolean running;
+    // producer side state, guarded by the monitor of this ring
+    private long nextSequence;
+    private long gatingSequence = -1L;
+
+    public TickRingBuffer(String name, int size, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Tick ring size must be a power of two, got " + size);
+        }
+        this.name = name;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            this.slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public synchronized void addHandler(String handlerName, FrameHandler handler) {
+        if (this.running) {
+            throw new IllegalStateException("Handlers must be added to tick ring " + this.name + " before it is started");
+        }
+        this.handlers.add(new HandlerThread(handlerName, handler));
+    }
+
+    public synchronized void start() {
+        this.running = true;
+        for (HandlerThread handler : this.handlers) {
+            handler.sequence.set(this.cursor.get());
+            Thread thread = new Thread(handler, "tick-ring-" + this.name + "-" + handler.name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        log.info("Started tick ring {} of {} slots with {} handlers, {} wait and {} overflow",
+                this.name, this.slots.length, this.handlers.size(), this.waitStrategy, this.overflowPolicy);
+    }
+
+    /**
+     * Copies the frame into the next slot. Publishing is serialized, so the reader threads of
+     * several connections may share one ring.
+     */
+    @Override
+    public synchronized void onFrame(byte[] frame, long receivedAt) {
+        if (!this.running) {
+            return;
+        }
+        long sequence = this.nextSequence;
+        long wrapPoint = sequence - this.slots.length;
+        if (wrapPoint > this.gatingSequence) {
+            this.gatingSequence = this.minimumHandlerSequence();
+            if (wrapPoint > this.gatingSequence && this.overflowPolicy == OverflowPolicy.DROP) {
+                this.dropped.increment();
+                return;
+            }
+        }
+        Slot slot = this.slots[(int) sequence & this.mask];
+        slot.sequence = WRITING;
+        // the slot must read as being written before any of its bytes change
+        VarHandle.storeStoreFence();
+        if (slot.bytes.length < frame.length) {
+            slot.bytes = new byte[Math.max(frame.length, slot.bytes.length * 2)];
+        }
+        System.arraycopy(frame, 0, slot.bytes, 0, frame.length);
+        slot.length = frame.length;
+        slot.receivedAt = receivedAt;
+        slot.sequence = sequence;
+        this.nextSequence = sequence + 1;
+        this.cursor.set(sequence);
+        if (this.waitStrategy == WaitStrategy.BLOCKING && this.blockedHandlers.get() > 0) {
+            this.lock.lock();
+            try {
+                this.published.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    public long getDroppedFrames() {
+        return this.dropped.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("kite.tick.ring.dropped", this.dropped, LongAdder::sum)
+                .description("Frames dropped because the slowest handler was a whole ring behind")
+                .tag("ring", this.name)
+                .register(registry);
+        for (HandlerThread handler : this.handlers) {
+            Gauge.builder("kite.tick.ring.depth", handler, HandlerThread::depth)
+                    .description("Frames published but not yet handled")
+                    .tags("ring", this.name, "handler", handler.name)
+                    .register(registry);
+            FunctionCounter.builder("kite.tick.ring.skipped", handler.skipped, LongAdder::sum)
+                    .description("Frames a lagging handler skipped because they were overwritten")
+                    .tags("ring", this.name, "handler", handler.name)
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        this.lock.lock();
+        try {
+            this.published.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private long minimumHandlerSequence() {
+        long minimum = this.nextSequence - 1;
+        for (HandlerThread handler : this.handlers) {
+            minimum = Math.min(minimum, handler.sequence.get());
+        }
+        return minimum;
+    }
+
+    private long waitFor(long sequence) throws InterruptedException {
+        long available;
+        int tries = 0;
+        while ((available = this.cursor.get()) < sequence && this.running) {
+            switch (this.waitStrategy) {
+                case BUSY_SPIN -> Thread.onSpinWait();
+                case YIELDING -> {
+                    if (++tries > SPIN_TRIES) {
+                        Thread.yield();
+                    } else {
+                        Thread.onSpinWait();
+                    }
+                }
+                case SLEEPING -> {
+                    if (++tries > 2 * SPIN_TRIES) {
+                        LockSupport.parkNanos(SLEEP_NANOS);
+                    } else if (tries > SPIN_TRIES) {
+                        Thread.yield();
+                    } else {
+                        Thread.onSpinWait();
+                    }
+                }
+                case BLOCKING -> {
+                    this.blockedHandlers.incrementAndGet();
+                    this.lock.lock();
+                    try {
+                        if (this.cursor.get() < sequence && this.running) {
+                            this.published.await(1, TimeUnit.MILLISECONDS);
+                        }
+                    } finally {
+                        this.lock.unlock();
+                        this.blockedHandlers.decrementAndGet();
+                    }
+                }
+            }
+        }
+        return available;
+    }
+
+    private static final class Slot {
+        private volatile long sequence = -1L;
+        private byte[] bytes = new byte[INITIAL_SLOT_CAPACITY];
+        private int length;
+        private long receivedAt;
+    }
+
+    private final class HandlerThread implements Runnable {
+
+        private final String name;
+        private final FrameHandler handler;
+        private final AtomicLong sequence = new AtomicLong(-1L);
+        private final LongAdder skipped = new LongAdder();
+        // slots may be overwritten under the conflate policy, so frames are read from a private copy
+        private byte[] scratch = new byte[INITIAL_SLOT_CAPACITY];
+        private int scratchLength;
+        private long scratchReceivedAt;
+
+        private HandlerThread(String name, FrameHandler handler) {
+            this.name = name;
+            this.handler = handler;
+        }
+
+        private double depth() {
+            return Math.min(cursor.get() - this.sequence.get(), slots.length);
+        }
+
+        @Override
+        public void run() {
+            long next = this.sequence.get() + 1;
+            while (running) {
+                long available;
+                try {
+                    available = waitFor(next);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (available - next >= slots.length) {
+                    // lapped by the reader, resume at the oldest frame still in the ring
+                    long resume = available - slots.length + 1;
+                    this.skipped.add(resume - next);
+                    next = resume;
+                }
+                for (; next <= available; next++) {
+                    Slot slot = slots[(int) next & mask];
+                    try {
+                        if (overflowPolicy == OverflowPolicy.DROP) {
+                            this.handler.onFrame(slot.bytes, slot.length, slot.receivedAt);
+                        } else if (this.copy(slot, next)) {
+                            this.handler.onFrame(this.scratch, this.scratchLength, this.scratchReceivedAt);
+                        } else {
+                            this.skipped.increment();
+                        }
+                    } catch (Exception e) {
+                        log.error("Tick ring {} handler {} failed on a frame: {}", TickRingBuffer.this.name, this.name, e.getMessage(), e);
+                    }
+                    this.sequence.lazySet(next);
+                }
+            }
+        }
+
+        // copies the slot and tells whether it still held the expected frame once the copy was done
+        private boolean copy(Slot slot, long expected) {
+            if (slot.sequence != expected) {
+                return false;
+            }
+            byte[] bytes = slot.bytes;
+            int length = Math.min(slot.length, bytes.length);
+            if (this.scratch.length < length) {
+                this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+            }
+            System.arraycopy(bytes, 0, this.scratch, 0, length);
+            this.scratchLength = length;
+            this.scratchReceivedAt = slot.receivedAt;
+            VarHandle.loadLoadFence();
+            return slot.sequence == expected;
+        }
+    }
+}
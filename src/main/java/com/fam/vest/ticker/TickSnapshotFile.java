@@ -0,0 +1,107 @@
+package com.fam.vest.ticker;
+
+import com.fam.vest.util.ConcurrentLongObjectMap;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Last-value snapshot of a tick cache in one memory-mapped file. A snapshot is written whole to
+ * a temporary file that is then moved over the previous one, so a crash while saving never
+ * leaves a torn snapshot behind.
+ * <p>
+ * A snapshot is a {@link #MAGIC} header and {@code [long savedAtMillis][int count]}, followed by
+ * {@code count} records of {@code [long receivedAtMillis][tick]} in the layout of
+ * {@link PrimitiveTick#writeTo}.
+ */
+public final class TickSnapshotFile {
+
+    public static final long MAGIC = 0x4656534E41503031L;
+    public static final int HEADER_LENGTH = 8 + 8 + 4;
+    public static final int MAXIMUM_RECORD_LENGTH = 8 + PrimitiveTick.MAXIMUM_WIRE_LENGTH;
+
+    @FunctionalInterface
+    public interface Reader {
+        void read(PrimitiveTick tick, long receivedAt);
+    }
+
+    private TickSnapshotFile() {
+    }
+
+    /**
+     * Saves every tick of the cache, each slot is written under its own lock. Returns the number
+     * of ticks saved.
+     *
+     * @param receivedAt time the tick of a token was last received, zero leaves the token out
+     */
+    public static int write(Path file, ConcurrentLongObjectMap<PrimitiveTick> ticks, LongUnaryOperator receivedAt) throws IOException {
+        // a little headroom for tokens added while walking the cache, later ones wait for the next snapshot
+        long capacity = HEADER_LENGTH + (long) (ticks.size() + 64) * MAXIMUM_RECORD_LENGTH;
+        if (null != file.toAbsolutePath().getParent()) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        int[] count = new int[1];
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            region.position(HEADER_LENGTH);
+            ticks.forEach((token, slot) -> {
+                long tokenReceivedAt = receivedAt.applyAsLong(token);
+                if (tokenReceivedAt <= 0L || region.remaining() < MAXIMUM_RECORD_LENGTH) {
+                    return;
+                }
+                region.putLong(tokenReceivedAt);
+                synchronized (slot) {
+                    slot.writeTo(region);
+                }
+                count[0]++;
+            });
+            region.putLong(0, MAGIC);
+            region.putLong(8, System.currentTimeMillis());
+            region.putInt(16, count[0]);
+            region.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count[0];
+    }
+
+    /**
+     * Hands every saved tick received at or after {@code notBefore} to the reader, reusing one
+     * tick instance. Returns the number of ticks read, zero when there is no snapshot.
+     */
+    public static int read(Path file, long notBefore, Reader reader) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_LENGTH) {
+                return 0;
+            }
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (region.getLong(0) != MAGIC) {
+                throw new IOException("Not a tick snapshot: " + file);
+            }
+            int count = region.getInt(16);
+            region.position(HEADER_LENGTH);
+            PrimitiveTick tick = new PrimitiveTick();
+            int read = 0;
+            for (int i = 0; i < count; i++) {
+                long receivedAt = region.getLong();
+                tick.clear();
+                tick.readFrom(region);
+                if (receivedAt >= notBefore) {
+                    reader.read(tick, receivedAt);
+                    read++;
+                }
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.fam.vest.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+
+/**
+ * Open addressing map keyed by primitive longs. Reads are lock free and never box the key,
+ * writes are serialized on the map. Keys 0 and Long.MIN_VALUE are reserved.
+ */
+public class ConcurrentLongObjectMap<V> {
+
+    private static final long FREE = 0L;
+    private static final long REMOVED = Long.MIN_VALUE;
+    private static final int MINIMUM_CAPACITY = 16;
+
+    @FunctionalInterface
+    public interface Visitor<V> {
+        void visit(long key, V value);
+    }
+
+    private static final class Table<V> {
+        private final AtomicLongArray keys;
+        private final AtomicReferenceArray<V> values;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.values = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+    }
+
+    private volatile Table<V> table;
+    private int size;
+    private int used;
+
+    public ConcurrentLongObjectMap() {
+        this(MINIMUM_CAPACITY);
+    }
+
+    public ConcurrentLongObjectMap(int expectedSize) {
+        this.table = new Table<>(capacityFor(expectedSize));
+    }
+
+    public V get(long key) {
+        Table<V> current = this.table;
+        int index = index(key, current.mask);
+        for (int probe = 0; probe <= current.mask; probe++) {
+            long slotKey = current.keys.get(index);
+            if (slotKey == key) {
+                return current.values.get(index);
+            }
+            if (slotKey == FREE) {
+                return null;
+            }
+            index = (index + 1) & current.mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return this.get(key) != null;
+    }
+
+    public synchronized V put(long key, V value) {
+        checkKey(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported");
+        }
+        Table<V> current = this.table;
+        int index = this.find(current, key);
+        if (index >= 0) {
+            return current.values.getAndSet(index, value);
+        }
+        this.insert(key, value);
+        return null;
+    }
+
+    public synchronized V computeIfAbsent(long key, LongFunction<V> factory) {
+        V existing = this.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        checkKey(key);
+        V value = factory.apply(key);
+        if (value != null) {
+            this.insert(key, value);
+        }
+        return value;
+    }
+
+    public synchronized V remove(long key) {
+        Table<V> current = this.table;
+        int index = this.find(current, key);
+        if (index < 0) {
+            return null;
+        }
+        V previous = current.values.get(index);
+        current.keys.set(index, REMOVED);
+        current.values.set(index, null);
+        this.size--;
+        return previous;
+    }
+
+    public synchronized void clear() {
+        this.table = new Table<>(MINIMUM_CAPACITY);
+        this.size = 0;
+        this.used = 0;
+    }
+
+    public synchronized int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    public void forEach(Visitor<V> visitor) {
+        Table<V> current = this.table;
+        for (int index = 0; index <= current.mask; index++) {
+            long key = current.keys.get(index);
+            if (key != FREE && key != REMOVED) {
+                V value = current.values.get(index);
+                if (value != null) {
+                    visitor.visit(key, value);
+                }
+            }
+        }
+    }
+
+    public long[] keys() {
+        Table<V> current = this.table;
+        long[] keys = new long[current.mask + 1];
+        int count = 0;
+        for (int index = 0; index <= current.mask; index++) {
+            long key = current.keys.get(index);
+            if (key != FREE && key != REMOVED && current.values.get(index) != null) {
+                keys[count++] = key;
+            }
+        }
+        return Arrays.copyOf(keys, count);
+    }
+
+    private int find(Table<V> current, long key) {
+        int index = index(key, current.mask);
+        for (int probe = 0; probe <= current.mask; probe++) {
+            long slotKey = current.keys.get(index);
+            if (slotKey == key) {
+                return index;
+            }
+            if (slotKey == FREE) {
+                return -1;
+            }
+            index = (index + 1) & current.mask;
+        }
+        return -1;
+    }
+
+    private void insert(long key, V value) {
+        if ((this.used + 1) * 2 > this.table.mask + 1) {
+            this.rehash(capacityFor(this.size + 1));
+        }
+        Table<V> current = this.table;
+        int index = index(key, current.mask);
+        while (current.keys.get(index) != FREE) {
+            index = (index + 1) & current.mask;
+        }
+        // value first so that a reader that sees the key also sees its value
+        current.values.set(index, value);
+        current.keys.set(index, key);
+        this.size++;
+        this.used++;
+    }
+
+    private void rehash(int capacity) {
+        Table<V> previous = this.table;
+        Table<V> next = new Table<>(capacity);
+        for (int index = 0; index <= previous.mask; index++) {
+            long key = previous.keys.get(index);
+            V value = previous.values.get(index);
+            if (key != FREE && key != REMOVED && value != null) {
+                int slot = index(key, next.mask);
+                while (next.keys.get(slot) != FREE) {
+                    slot = (slot + 1) & next.mask;
+                }
+                next.values.set(slot, value);
+                next.keys.set(slot, key);
+            }
+        }
+        this.used = this.size;
+        this.table = next;
+    }
+
+    private static void checkKey(long key) {
+        if (key == FREE || key == REMOVED) {
+            throw new IllegalArgumentException("Reserved key: " + key);
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int index(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
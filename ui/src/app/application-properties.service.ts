@@ -18,10 +18,12 @@ export class ApplicationPropertiesService {
       dev: {
         baseUrl: 'http://localhost:8081/rest',
         wsUrl: 'http://localhost:8081/ws',
+        compactTicks: true,
       },
       prod: {
         baseUrl: '/rest',
         wsUrl: '/ws',
+        compactTicks: true,
       }
     };
   }
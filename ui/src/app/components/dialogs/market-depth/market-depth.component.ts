@@ -104,7 +104,7 @@ export class MarketDepthComponent implements OnInit, OnDestroy {
   protected readonly faArrowTrendUp = faArrowTrendUp;
 
   ngOnDestroy(): void {
-    this.ws.unsubscribe([this.instrumentToken]);
+    this.ws.unsubscribe([this.instrumentToken], 'full');
     this.sub?.unsubscribe();
     this.instrumentToken = 0;
   }
@@ -115,7 +115,7 @@ export class MarketDepthComponent implements OnInit, OnDestroy {
         filter(c => c), // only when connected = true
         take(1)
       ).subscribe(() => {
-        this.ws.subscribe([this.instrumentToken]);
+        this.ws.subscribe([this.instrumentToken], 'full');
       });
       this.sub = this.ws.ticks().subscribe((ticks: any[]) => {
         this.updateMarketDepth(ticks);
@@ -5,6 +5,33 @@ import {BehaviorSubject, map, Observable, of, Subject, timer} from 'rxjs';
 import {AuthUserService} from "./auth/auth-user.service";
 import {ApplicationPropertiesService} from "../application-properties.service";
 
+// kite tick modes from the lightest to the richest packet
+export type TickMode = 'ltp' | 'quote' | 'full';
+const TICK_MODES: TickMode[] = ['ltp', 'quote', 'full'];
+
+// field ids of the compact tick encoding, a frame holds [token, field, value, ...] per instrument
+// with only the fields changed since the previous frame, prices scaled by 10^decimals
+const COMPACT_DECIMALS = 0;
+const COMPACT_MODE = 1;
+const COMPACT_TRADABLE = 2;
+const COMPACT_LAST_TRADED_PRICE = 3;
+const COMPACT_HIGH_PRICE = 4;
+const COMPACT_LOW_PRICE = 5;
+const COMPACT_OPEN_PRICE = 6;
+const COMPACT_CLOSE_PRICE = 7;
+const COMPACT_LAST_TRADED_QUANTITY = 8;
+const COMPACT_AVERAGE_TRADE_PRICE = 9;
+const COMPACT_VOLUME_TRADED_TODAY = 10;
+const COMPACT_TOTAL_BUY_QUANTITY = 11;
+const COMPACT_TOTAL_SELL_QUANTITY = 12;
+const COMPACT_LAST_TRADED_TIME = 13;
+const COMPACT_OI = 14;
+const COMPACT_OI_DAY_HIGH = 15;
+const COMPACT_OI_DAY_LOW = 16;
+const COMPACT_TICK_TIMESTAMP = 17;
+const COMPACT_DEPTH = 18;
+const COMPACT_DEPTH_LEVELS = 5;
+
 @Injectable({ providedIn: 'root' })
 export class WebSocketService implements OnDestroy {
   private client: Client;
@@ -12,7 +39,10 @@ export class WebSocketService implements OnDestroy {
   private tick$ = new Subject<any[]>();
   private order$ = new Subject<any>();
 
-  private tokenRefCount: Map<number, number> = new Map();
+  // references per token and tick mode, the server is only told the highest mode referenced
+  private tokenRefCount: Map<number, number[]> = new Map();
+  // last field values per token of the compact tick encoding
+  private compactTicks: Map<number, any[]> = new Map();
 
   constructor(private authUserService: AuthUserService,
               private appProperties: ApplicationPropertiesService) {
@@ -29,14 +59,17 @@ export class WebSocketService implements OnDestroy {
       reconnectDelay: 5000,
       onConnect: () => {
         this.connected$.next(true);
+        // a new session starts with full snapshots again
+        this.compactTicks.clear();
+        const tickHeaders = this.appProperties.getConfig().compactTicks ? { 'x-tick-encoding': 'compact' } : {};
         this.client.subscribe('/user/queue/ticks', (m: IMessage) => {
-          let ticks= JSON.parse(m.body);
-          this.tick$.next(JSON.parse(m.body));
-        });
+          this.tick$.next(this.decodeTicks(JSON.parse(m.body)));
+        }, tickHeaders);
 
         this.client.subscribe('/user/queue/orders', (m: IMessage) => {
           this.order$.next(JSON.parse(m.body));
         });
+        this.resubscribeAll();
       },
       onWebSocketClose: () => this.connected$.next(false),
       debug: (str) => console.debug(str),
@@ -56,35 +89,46 @@ export class WebSocketService implements OnDestroy {
     return this.order$.asObservable();
   }
 
-  subscribe(instrumentTokens: number[]): void {
+  subscribe(instrumentTokens: number[], mode: TickMode = 'quote'): void {
+    const modeChanges = new Map<TickMode, number[]>();
     for (const token of instrumentTokens) {
-      const count = this.tokenRefCount.get(token) || 0;
-      this.tokenRefCount.set(token, count + 1);
+      const counts = this.tokenRefCount.get(token) || [0, 0, 0];
+      const previousMode = this.highestMode(counts);
+      counts[TICK_MODES.indexOf(mode)]++;
+      this.tokenRefCount.set(token, counts);
+      const currentMode = this.highestMode(counts)!;
+      if (currentMode !== previousMode) {
+        modeChanges.set(currentMode, [...(modeChanges.get(currentMode) || []), token]);
+      }
     }
-    if(instrumentTokens.length < 1) {
+    if(modeChanges.size < 1) {
       console.log('No new instrument tokens for subscription.');
       return;
     }
-    if (this.client.connected) {
-      this.client.publish({ destination: '/app/subscribe', body: JSON.stringify({ instrumentTokens }) });
-    } else {
-      console.warn('WebSocket client is not connected. Cannot subscribe.');
-    }
+    modeChanges.forEach((tokens, tokenMode) => this.publishSubscribe(tokens, tokenMode));
   }
 
-  unsubscribe(inputInstrumentTokens: number[]): Observable<void> {
+  unsubscribe(inputInstrumentTokens: number[], mode: TickMode = 'quote'): Observable<void> {
     const instrumentTokens: number[] = [];
+    const modeChanges = new Map<TickMode, number[]>();
     for (const token of inputInstrumentTokens) {
-      const count = this.tokenRefCount.get(token);
-      if (count !== undefined) {
-        if (count <= 1) {
+      const counts = this.tokenRefCount.get(token);
+      const index = TICK_MODES.indexOf(mode);
+      if (counts !== undefined && counts[index] > 0) {
+        const previousMode = this.highestMode(counts);
+        counts[index]--;
+        const currentMode = this.highestMode(counts);
+        if (currentMode === undefined) {
           this.tokenRefCount.delete(token);
+          this.compactTicks.delete(token);
           instrumentTokens.push(token);
-        } else {
-          this.tokenRefCount.set(token, count - 1);
+        } else if (currentMode !== previousMode) {
+          // a richer subscriber went away, fall back to the mode still needed
+          modeChanges.set(currentMode, [...(modeChanges.get(currentMode) || []), token]);
         }
       }
     }
+    modeChanges.forEach((tokens, tokenMode) => this.publishSubscribe(tokens, tokenMode));
     if (instrumentTokens.length < 1) {
       console.log('No unique instrument tokens for un-subscribe.');
       return of(void 0); // still return observable
@@ -99,7 +143,86 @@ export class WebSocketService implements OnDestroy {
     }
   }
 
+  // a new server session holds no subscriptions, send every held token in its highest mode again
+  private resubscribeAll(): void {
+    const tokensByMode = new Map<TickMode, number[]>();
+    this.tokenRefCount.forEach((counts, token) => {
+      const mode = this.highestMode(counts);
+      if (mode !== undefined) {
+        tokensByMode.set(mode, [...(tokensByMode.get(mode) || []), token]);
+      }
+    });
+    tokensByMode.forEach((tokens, mode) => this.publishSubscribe(tokens, mode));
+  }
+
+  private publishSubscribe(instrumentTokens: number[], mode: TickMode): void {
+    if (this.client.connected) {
+      this.client.publish({ destination: '/app/subscribe', body: JSON.stringify({ instrumentTokens, mode }) });
+    } else {
+      console.warn('WebSocket client is not connected. Cannot subscribe.');
+    }
+  }
+
+  // plain frames are arrays of tick objects, compact frames arrays of arrays
+  private decodeTicks(frame: any[]): any[] {
+    if (frame.length < 1 || !Array.isArray(frame[0])) {
+      return frame;
+    }
+    return frame.map((entry: any[]) => this.decodeCompactTick(entry));
+  }
+
+  private decodeCompactTick(entry: any[]): any {
+    const instrumentToken = entry[0];
+    const values = this.compactTicks.get(instrumentToken) || [];
+    for (let index = 1; index + 1 < entry.length; index += 2) {
+      values[entry[index]] = entry[index + 1];
+    }
+    this.compactTicks.set(instrumentToken, values);
+    const scale = Math.pow(10, values[COMPACT_DECIMALS] ?? 2);
+    const price = (field: number) => (values[field] ?? 0) / scale;
+    const time = (field: number) => values[field] ? new Date(values[field] * 1000).toISOString() : null;
+    const lastTradedPrice = price(COMPACT_LAST_TRADED_PRICE);
+    const closePrice = price(COMPACT_CLOSE_PRICE);
+    const tick: any = {
+      mode: TICK_MODES[(values[COMPACT_MODE] ?? 0) - 1],
+      tradable: values[COMPACT_TRADABLE] === 1,
+      instrumentToken,
+      lastTradedPrice,
+      highPrice: price(COMPACT_HIGH_PRICE),
+      lowPrice: price(COMPACT_LOW_PRICE),
+      openPrice: price(COMPACT_OPEN_PRICE),
+      closePrice,
+      change: closePrice !== 0 ? (lastTradedPrice - closePrice) * 100 / closePrice : 0,
+      lastTradedQuantity: values[COMPACT_LAST_TRADED_QUANTITY] ?? 0,
+      averageTradePrice: price(COMPACT_AVERAGE_TRADE_PRICE),
+      volumeTradedToday: values[COMPACT_VOLUME_TRADED_TODAY] ?? 0,
+      totalBuyQuantity: values[COMPACT_TOTAL_BUY_QUANTITY] ?? 0,
+      totalSellQuantity: values[COMPACT_TOTAL_SELL_QUANTITY] ?? 0,
+      lastTradedTime: time(COMPACT_LAST_TRADED_TIME),
+      oi: values[COMPACT_OI] ?? 0,
+      openInterestDayHigh: values[COMPACT_OI_DAY_HIGH] ?? 0,
+      openInterestDayLow: values[COMPACT_OI_DAY_LOW] ?? 0,
+      tickTimestamp: time(COMPACT_TICK_TIMESTAMP),
+    };
+    const depth: number[] | undefined = values[COMPACT_DEPTH];
+    if (depth) {
+      const levels = (first: number) => Array.from({ length: COMPACT_DEPTH_LEVELS }, (_, level) => {
+        const index = (first + level) * 3;
+        return { quantity: depth[index], price: depth[index + 1] / scale, orders: depth[index + 2] };
+      });
+      tick.marketDepth = { buy: levels(0), sell: levels(COMPACT_DEPTH_LEVELS) };
+    }
+    return tick;
+  }
 
+  private highestMode(counts: number[]): TickMode | undefined {
+    for (let index = TICK_MODES.length - 1; index >= 0; index--) {
+      if (counts[index] > 0) {
+        return TICK_MODES[index];
+      }
+    }
+    return undefined;
+  }
 
   disconnect(): void {
     this.client.deactivate();